@@ -0,0 +1,22 @@
+#!/usr/bin/env sh
+# Measure the time to first send of short-lived scripted invocations.
+# Usage: scripts/startup-benchmark.sh <user-name> <destinatary> [runs]
+set -eu
+
+USER_NAME="$1"
+DESTINATARY="$2"
+RUNS="${3:-10}"
+
+JAR="target/ChatRabbitMQ-1.0-SNAPSHOT-jar-with-dependencies.jar"
+ARCHIVE="target/ChatRabbitMQ-1.0-SNAPSHOT.jsa"
+
+JAVA_OPTIONS=""
+if [ -f "$ARCHIVE" ]; then
+  JAVA_OPTIONS="-XX:SharedArchiveFile=$ARCHIVE"
+fi
+
+for _ in $(seq "$RUNS"); do
+  printf '%s\n#%s\nstartup benchmark\n' "$USER_NAME" "$DESTINATARY" |
+    CHAT_TRACE_STARTUP=true java $JAVA_OPTIONS -jar "$JAR" 2>&1 >/dev/null |
+    grep "Time to first send"
+done
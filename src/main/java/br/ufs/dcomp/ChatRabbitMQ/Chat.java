@@ -1,13 +1,21 @@
 package br.ufs.dcomp.ChatRabbitMQ;
 
 import br.ufs.dcomp.Message;
-import br.ufs.dcomp.Message.Builder;
+import br.ufs.dcomp.RosterEvent;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.protobuf.ByteString;
+import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 import com.rabbitmq.client.ConnectionFactory;
 import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -20,64 +28,197 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
-import java.util.function.BiFunction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Chat implements AutoCloseable {
 
+  @FunctionalInterface
+  public interface ConsumerFactory {
+    Consumer create(
+      Channel channel,
+      String userName,
+      ChatDeliveryConsumer.Replier replier
+    );
+  }
+
   private static final String groupNamespace = "chat.group";
   private static final String fileNamespace = "chat.file";
   private static final String textNamespace = "chat.text";
+  static final String inboxNamespace = "chat.inbox";
+  private static final String controlNamespace = "chat.control";
+  private static final int textPrefetch = 256;
+  private static final int catchUpPrefetch = 2048;
+  private static final int migrationBatch = 256;
 
-  private final HttpClient client;
-  private final Connection connection;
-  private final BiFunction<Channel, String, Consumer> factory;
+  private final Set<String> declaredQueues;
+  private final ConnectionFactory connectionFactory;
+  private final ChatNodeResolver resolver;
+  private final ConsumerFactory factory;
+  private final int filePrefetch;
+  private final ChatTransferScheduler transfers;
+  private final ChatRoster roster;
+  private final ChatLatency latency;
+  private final ChatHistory history;
+  private final ChatCoalescer coalescer;
+  private final boolean inboxLayout;
+  private final String origin;
+  private final AtomicLong sequence;
+  private final AtomicBoolean reconciling;
 
+  private final long outgoingBudget;
   private final String auth;
   private final URI host;
   private final String vhost;
 
+  private HttpClient client;
+  private volatile Connection connection;
+  private volatile ChatChannelTracker channels;
+  private volatile ChatPublisher publisher;
   private Channel channel;
-  private String userName;
-  private String routingKey;
-  private String exchange;
+  private Channel textChannel;
+  private Channel fileChannel;
+  private Channel controlChannel;
+  private boolean controlDeclared;
+  private volatile String userName;
+  private volatile String routingKey;
+  private volatile String exchange;
 
   Chat(
-    String host,
+    ConnectionFactory connectionFactory,
+    String hosts,
+    String api,
     String vhost,
-    String port,
     String user,
     String password,
-    BiFunction<Channel, String, Consumer> factory
+    int filePrefetch,
+    ChatTransferScheduler transfers,
+    long outgoingBudget,
+    ChatLatency latency,
+    ChatHistory history,
+    long coalesceWindow,
+    boolean inboxLayout,
+    ConsumerFactory factory
   ) throws IOException, TimeoutException, URISyntaxException {
     var credentials = user + ":" + password;
     this.auth = Base64.getEncoder().encodeToString(credentials.getBytes());
-    this.host = new URI("http://" + host + ":" + port);
+    this.host = new URI(api);
     this.vhost = URLEncoder.encode(vhost, StandardCharsets.UTF_8);
 
-    var connectionFactory = new ConnectionFactory();
-    connectionFactory.setHost(host);
-    connectionFactory.setUsername(user);
-    connectionFactory.setPassword(password);
-    connectionFactory.setVirtualHost(vhost);
-
-    this.client = HttpClient.newBuilder()
-      .connectTimeout(Duration.ofSeconds(5))
-      .build();
-
-    this.connection = connectionFactory.newConnection();
-    this.channel = this.connection.createChannel();
+    this.connectionFactory = connectionFactory;
+    this.connectionFactory.setUsername(user);
+    this.connectionFactory.setPassword(password);
+    this.connectionFactory.setVirtualHost(vhost);
+    this.connectionFactory.setAutomaticRecoveryEnabled(true);
+    this.resolver = new ChatNodeResolver(hosts);
+    this.outgoingBudget = outgoingBudget;
 
     this.userName = "";
     this.routingKey = "";
     this.exchange = "";
 
+    this.declaredQueues = ConcurrentHashMap.newKeySet();
     this.factory = factory;
+    this.filePrefetch = filePrefetch;
+    this.transfers = transfers;
+
+    this.roster = new ChatRoster();
+    this.latency = latency;
+    this.history = history;
+    this.coalescer = new ChatCoalescer(coalesceWindow, this::publishBatch);
+    this.inboxLayout = inboxLayout;
+    this.origin = UUID.randomUUID().toString();
+    this.sequence = new AtomicLong();
+    this.reconciling = new AtomicBoolean();
+    this.controlDeclared = false;
+
+    attach(this.connectionFactory.newConnection(this.resolver));
+  }
+
+  private void attach(Connection connection) throws IOException {
+    this.connection = connection;
+    this.channels = new ChatChannelTracker(connection);
+    this.channel = createPublishChannel();
+    this.publisher = new ChatPublisher(
+      connection,
+      () -> this.channel,
+      this.outgoingBudget
+    );
+
+    ((Recoverable) connection).addRecoveryListener(
+      new RecoveryListener() {
+        public void handleRecovery(Recoverable recoverable) {
+          reconcile();
+        }
+
+        public void handleRecoveryStarted(Recoverable recoverable) {}
+      }
+    );
+  }
+
+  private Connection openUpload(ChatTransferScheduler.Transfer transfer)
+    throws IOException, TimeoutException {
+    var factory = this.connectionFactory.clone();
+    factory.setAutomaticRecoveryEnabled(false);
+    factory.setSocketFactory(this.transfers.getSocketFactory(transfer));
+    return factory.newConnection(this.resolver);
+  }
+
+  private void moveToLeader(String... queues)
+    throws IOException, TimeoutException {
+    if (!this.resolver.isClustered()) return;
+
+    String node = null;
+    for (var queue : queues) {
+      try {
+        var info = getJson(
+          "/api/queues/" +
+          this.vhost +
+          "/" +
+          URLEncoder.encode(queue, StandardCharsets.UTF_8)
+        ).getAsJsonObject();
+        var leader = info.has("leader")
+          ? info.get("leader")
+          : info.get("node");
+        if (leader != null && !leader.isJsonNull()) {
+          node = leader.getAsString();
+          break;
+        }
+      } catch (final ChatException e) {
+        continue;
+      }
+    }
+    if (node == null) return;
+
+    this.resolver.prefer(node);
+    if (this.resolver.isPreferred(this.connection)) return;
+
+    var previous = this.connection;
+    var previousChannels = this.channels;
+    var previousChannel = this.channel;
+    attach(this.connectionFactory.newConnection(this.resolver));
+    previousChannels.close(previousChannel);
+    previous.abort();
+  }
+
+  private synchronized HttpClient getClient() {
+    if (this.client == null) {
+      this.client = HttpClient.newBuilder()
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+    }
+    return this.client;
   }
 
   private static String getGroupExchange(final String groupName) {
@@ -95,57 +236,144 @@ public class Chat implements AutoCloseable {
     return Chat.textNamespace + "." + userName;
   }
 
+  private static String getInboxQueue(final String userName) {
+    if (userName.isEmpty()) return Chat.inboxNamespace;
+    return Chat.inboxNamespace + "." + userName;
+  }
+
+  private boolean hasInbox(String userName) {
+    if (userName.equals(this.userName)) return this.inboxLayout;
+    return isQueueExists(getInboxQueue(userName));
+  }
+
+  private String getTextRoute(String userName) {
+    if (this.inboxLayout && userName.equals(this.userName)) {
+      return getInboxQueue(userName);
+    }
+    return getTextQueue(userName);
+  }
+
+  private String getFileRoute(String userName) {
+    if (this.inboxLayout && userName.equals(this.userName)) {
+      return getInboxQueue(userName);
+    }
+    return getFileQueue(userName);
+  }
+
+  private static String getInboxCopy(String routingKey) {
+    var textPrefix = Chat.textNamespace + ".";
+    var filePrefix = Chat.fileNamespace + ".";
+    if (routingKey.startsWith(textPrefix)) {
+      return getInboxQueue(routingKey.substring(textPrefix.length()));
+    } else if (routingKey.startsWith(filePrefix)) {
+      return getInboxQueue(routingKey.substring(filePrefix.length()));
+    }
+    return "";
+  }
+
+  private Channel createPublishChannel() throws IOException {
+    var channel = this.channels.open("publish", true);
+    channel.addReturnListener(returned -> {
+      var destination = returned.getRoutingKey();
+      if (destination.startsWith(Chat.textNamespace + ".")) {
+        destination =
+          "user=" + destination.substring(Chat.textNamespace.length() + 1);
+      } else if (destination.startsWith(Chat.inboxNamespace + ".")) {
+        destination =
+          "user=" + destination.substring(Chat.inboxNamespace.length() + 1);
+      }
+      final var text = "Message could not be delivered to " + destination;
+      CompletableFuture.runAsync(() -> sendSystem(text));
+    });
+    return channel;
+  }
+
+  private void closeLanes() {
+    this.channels.cancelConsumers(this.textChannel);
+    this.channels.cancelConsumers(this.fileChannel);
+    this.channels.close(this.textChannel);
+    this.channels.close(this.fileChannel);
+    this.textChannel = null;
+    this.fileChannel = null;
+  }
+
   @Override
   public void close() throws IOException, TimeoutException {
-    this.channel.close();
+    this.transfers.close();
+    this.coalescer.close();
+    closeLanes();
+    this.channels.cancelConsumers(this.controlChannel);
+    this.channels.close(this.controlChannel);
+    this.channels.close(this.channel);
     this.connection.close();
   }
 
   private boolean isGroupExists(String groupName) {
+    Channel tmp = null;
     try {
-      var tmp = this.connection.createChannel();
+      tmp = this.channels.open("group lookup", false);
       tmp.exchangeDeclarePassive(getGroupExchange(groupName));
-      tmp.close();
       return true;
     } catch (Exception e) {
       return false;
+    } finally {
+      this.channels.close(tmp);
     }
   }
 
-  private boolean isUserExists(String userName) {
+  private boolean isQueueExists(String queue) {
+    Channel tmp = null;
     try {
-      var tmp = this.connection.createChannel();
-      tmp.queueDeclarePassive(getTextQueue(userName));
-      tmp.close();
+      tmp = this.channels.open("queue lookup", false);
+      tmp.queueDeclarePassive(queue);
       return true;
     } catch (Exception e) {
       return false;
+    } finally {
+      this.channels.close(tmp);
     }
   }
 
-  private Builder createDefaultMessageBuilder() {
-    return Message.newBuilder().setDatetime(
-      LocalDateTime.now().format(
-        DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")
-      )
-    );
+  private boolean isUserExists(String userName) {
+    if (userName.equals(this.userName)) return true;
+    return isQueueExists(getTextQueue(userName)) || hasInbox(userName);
   }
 
   private void sendSystem(String text) {
-    var payload = createDefaultMessageBuilder()
-      .setBody(ByteString.copyFromUtf8(text))
-      .build()
-      .toByteArray();
+    var payload = ChatMessageEncoder.encode(
+      ChatMessageEncoder.newBuilder("", "").setBody(
+        ByteString.copyFromUtf8(text)
+      )
+    );
 
     try {
-      this.channel.basicPublish("", getTextQueue(this.userName), null, payload);
+      this.publisher.publish(
+        "",
+        getTextRoute(this.userName),
+        ChatHeaders.create(ChatHeaders.KIND_SYSTEM, "", "", "", payload.length),
+        payload
+      );
     } catch (final Exception e) {
       return;
     }
   }
 
   public boolean isOpen() {
-    return this.connection.isOpen();
+    return this.publisher.getState() != ChatConnectionState.CLOSED;
+  }
+
+  public ChatConnectionState getConnectionState() {
+    return this.publisher.getState();
+  }
+
+  public String getStatus() {
+    return (
+      this.publisher.getStatus() +
+      "\nnode: " +
+      this.connection.getAddress().getHostAddress() +
+      ":" +
+      this.connection.getPort()
+    );
   }
 
   public String getUserName() {
@@ -160,46 +388,212 @@ public class Chat implements AutoCloseable {
     return this.exchange;
   }
 
-  public void logIn(String userName) throws ChatException {
-    if (!this.userName.isEmpty()) {
-      throw new ChatException("Already logged in");
+  private Channel openLane(
+    String queue,
+    int prefetch,
+    String userName,
+    boolean catchUp
+  ) throws IOException {
+    var lane = this.channels.open("lane " + queue, true);
+    var consumerTag = queue + "." + UUID.randomUUID();
+
+    if (!this.declaredQueues.contains(queue)) {
+      var args = new HashMap<String, Object>();
+      args.put("x-queue-type", "quorum");
+      lane.queueDeclareNoWait(queue, true, false, false, args);
     }
+    lane.basicQos(prefetch);
 
-    var args = new HashMap<String, Object>();
-    args.put("x-queue-type", "quorum");
+    if (catchUp) {
+      var backlog = lane.messageCount(queue);
+      this.history.beginCatchUp(consumerTag, backlog, () ->
+        CompletableFuture.runAsync(() -> {
+          try {
+            this.channels.cancel(lane, consumerTag);
+            lane.basicQos(prefetch);
+            this.channels.consume(
+              lane,
+              queue,
+              false,
+              queue + "." + UUID.randomUUID(),
+              this.factory.create(lane, userName, this::reply)
+            );
+          } catch (final IOException e) {
+            e.printStackTrace();
+          }
+        })
+      );
+      if (backlog > 0) {
+        lane.basicQos(Chat.catchUpPrefetch);
+      }
+    }
+
+    this.channels.consume(
+      lane,
+      queue,
+      false,
+      consumerTag,
+      this.factory.create(lane, userName, this::reply)
+    );
+    this.declaredQueues.add(queue);
+
+    return lane;
+  }
 
+  private void openSplitLanes(String userName) throws IOException {
+    var fileLane = CompletableFuture.supplyAsync(() -> {
+      try {
+        return openLane(
+          getFileQueue(userName),
+          this.filePrefetch,
+          userName,
+          false
+        );
+      } catch (final IOException e) {
+        throw new CompletionException(e);
+      }
+    });
+    IOException failure = null;
     try {
-      this.channel.queueDeclare(
-        getFileQueue(userName),
-        true,
-        false,
-        false,
-        args
-      );
-      this.channel.queueDeclare(
+      this.textChannel = openLane(
         getTextQueue(userName),
-        true,
-        false,
-        false,
-        args
+        Chat.textPrefetch,
+        userName,
+        true
       );
+    } catch (final IOException e) {
+      failure = e;
+    }
+    try {
+      this.fileChannel = fileLane.join();
+    } catch (final CompletionException e) {
+      if (failure == null) {
+        failure = e.getCause() instanceof IOException cause
+          ? cause
+          : new IOException(e.getCause());
+      }
+    }
+    if (failure != null) throw failure;
+  }
 
-      this.channel.basicConsume(
-        getFileQueue(userName),
-        true,
-        this.factory.apply(channel, userName)
+  private void shovel(Channel channel, String from, String to)
+    throws IOException, InterruptedException, TimeoutException {
+    while (true) {
+      var count = 0;
+      var lastTag = 0L;
+      GetResponse response;
+      while (
+        count < Chat.migrationBatch &&
+        (response = channel.basicGet(from, false)) != null
+      ) {
+        channel.basicPublish("", to, response.getProps(), response.getBody());
+        lastTag = response.getEnvelope().getDeliveryTag();
+        count++;
+      }
+      if (count == 0) return;
+
+      channel.waitForConfirmsOrDie();
+      channel.basicAck(lastTag, true);
+    }
+  }
+
+  private void migrateToInbox(String userName)
+    throws IOException, ChatException {
+    var inbox = getInboxQueue(userName);
+    var textQueue = getTextQueue(userName);
+    var fileQueue = getFileQueue(userName);
+    var hasText = isQueueExists(textQueue);
+    var hasFile = isQueueExists(fileQueue);
+    if (!hasText && !hasFile) return;
+
+    var groupPrefix = Chat.groupNamespace + ".";
+    var migration = this.channels.open("inbox migration", false);
+    try {
+      migration.confirmSelect();
+      var args = new HashMap<String, Object>();
+      args.put("x-queue-type", "quorum");
+      migration.queueDeclare(inbox, true, false, false, args);
+      this.declaredQueues.add(inbox);
+
+      for (var queue : new String[] { textQueue, fileQueue }) {
+        if (queue.equals(textQueue) ? !hasText : !hasFile) continue;
+        var path =
+          "/api/queues/" +
+          this.vhost +
+          "/" +
+          URLEncoder.encode(queue, StandardCharsets.UTF_8) +
+          "/bindings";
+        for (var e : getJsonArray(path)) {
+          var binding = e.getAsJsonObject();
+          var source = binding.get("source").getAsString();
+          if (!source.startsWith(groupPrefix)) continue;
+          migration.queueBind(inbox, source, Chat.inboxNamespace);
+          migration.queueUnbind(
+            queue,
+            source,
+            binding.get("routing_key").getAsString()
+          );
+        }
+      }
+
+      for (var queue : new String[] { textQueue, fileQueue }) {
+        if (queue.equals(textQueue) ? !hasText : !hasFile) continue;
+        shovel(migration, queue, inbox);
+        migration.queueDelete(queue, false, true);
+        this.declaredQueues.remove(queue);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ChatException(
+        "Could not finish the inbox migration, log in again to resume it"
       );
-      this.channel.basicConsume(
-        getTextQueue(userName),
-        true,
-        this.factory.apply(channel, userName)
+    } catch (final IOException | TimeoutException e) {
+      throw new ChatException(
+        "Could not finish the inbox migration, log in again to resume it"
       );
+    } finally {
+      this.channels.close(migration);
+    }
+  }
+
+  public void logIn(String userName) throws ChatException {
+    if (!this.userName.isEmpty()) {
+      throw new ChatException("Already logged in");
+    }
+
+    try {
+      if (this.inboxLayout) {
+        moveToLeader(getInboxQueue(userName), getTextQueue(userName));
+        migrateToInbox(userName);
+        this.textChannel = openLane(
+          getInboxQueue(userName),
+          Chat.textPrefetch,
+          userName,
+          true
+        );
+      } else {
+        moveToLeader(getTextQueue(userName));
+        openSplitLanes(userName);
+      }
+
+      CompletableFuture.runAsync(() -> {
+        try {
+          openControl();
+          reconcile();
+        } catch (final IOException e) {
+          e.printStackTrace();
+        }
+      });
 
       this.userName = userName;
       this.routingKey = "";
       this.exchange = "";
+    } catch (final ChatException e) {
+      closeLanes();
+      throw e;
     } catch (final Exception e) {
       e.printStackTrace();
+      closeLanes();
       throw new ChatException("Could not log in");
     }
   }
@@ -213,8 +607,9 @@ public class Chat implements AutoCloseable {
       this.userName = "";
       this.routingKey = "";
       this.exchange = "";
-      this.channel.close();
-      this.channel = this.connection.createChannel();
+      closeLanes();
+      this.channels.close(this.channel);
+      this.channel = createPublishChannel();
     } catch (final Exception e) {
       throw new ChatException("Could not log out");
     }
@@ -230,6 +625,7 @@ public class Chat implements AutoCloseable {
     } catch (final Exception e) {
       throw new ChatException("Could not delete group");
     }
+    publishRosterEvent(RosterEvent.Kind.GROUP_DELETED, groupName, "");
   }
 
   public void addUserToGroup(String userName, String groupName)
@@ -241,19 +637,28 @@ public class Chat implements AutoCloseable {
     }
 
     try {
-      this.channel.queueBind(
-        getFileQueue(userName),
-        getGroupExchange(groupName),
-        Chat.fileNamespace
-      );
-      this.channel.queueBind(
-        getTextQueue(userName),
-        getGroupExchange(groupName),
-        Chat.textNamespace
-      );
+      if (hasInbox(userName)) {
+        this.channel.queueBind(
+          getInboxQueue(userName),
+          getGroupExchange(groupName),
+          Chat.inboxNamespace
+        );
+      } else {
+        this.channel.queueBind(
+          getFileQueue(userName),
+          getGroupExchange(groupName),
+          Chat.fileNamespace
+        );
+        this.channel.queueBind(
+          getTextQueue(userName),
+          getGroupExchange(groupName),
+          Chat.textNamespace
+        );
+      }
     } catch (final Exception e) {
       throw new ChatException("Could not add user to group");
     }
+    publishRosterEvent(RosterEvent.Kind.USER_ADDED, groupName, userName);
   }
 
   public void createGroup(String groupName) throws ChatException {
@@ -263,6 +668,7 @@ public class Chat implements AutoCloseable {
 
     try {
       this.channel.exchangeDeclare(getGroupExchange(groupName), "direct");
+      publishRosterEvent(RosterEvent.Kind.GROUP_CREATED, groupName, "");
       addUserToGroup(this.userName, groupName);
       setDestinatary(groupName, true);
     } catch (final IOException e) {
@@ -279,16 +685,24 @@ public class Chat implements AutoCloseable {
     }
 
     try {
-      this.channel.queueUnbind(
-        getFileQueue(userName),
-        getGroupExchange(groupName),
-        Chat.fileNamespace
-      );
-      this.channel.queueUnbind(
-        getTextQueue(userName),
-        getGroupExchange(groupName),
-        Chat.textNamespace
-      );
+      if (hasInbox(userName)) {
+        this.channel.queueUnbind(
+          getInboxQueue(userName),
+          getGroupExchange(groupName),
+          Chat.inboxNamespace
+        );
+      } else {
+        this.channel.queueUnbind(
+          getFileQueue(userName),
+          getGroupExchange(groupName),
+          Chat.fileNamespace
+        );
+        this.channel.queueUnbind(
+          getTextQueue(userName),
+          getGroupExchange(groupName),
+          Chat.textNamespace
+        );
+      }
     } catch (final Exception e) {
       if (userName.equals(this.userName)) {
         throw new ChatException("Could not leave group");
@@ -296,79 +710,200 @@ public class Chat implements AutoCloseable {
         throw new ChatException("Could not remove user from group");
       }
     }
+    publishRosterEvent(RosterEvent.Kind.USER_REMOVED, groupName, userName);
   }
 
   public void leaveGroup(String groupName) throws ChatException {
-    removeUserFromGroup(groupName, this.userName);
+    removeUserFromGroup(this.userName, groupName);
   }
 
-  public ArrayList<String> listUsers(String groupName) throws ChatException {
-    if (!isGroupExists(groupName)) {
-      throw new ChatException("Given group does not exist");
-    }
-    var list = new ArrayList<String>();
+  private JsonArray getJsonArray(String path) throws ChatException {
+    return getJson(path).getAsJsonArray();
+  }
 
-    groupName = URLEncoder.encode(
-      getGroupExchange(groupName),
-      StandardCharsets.UTF_8
-    );
-    var uri = this.host.resolve(
-      "/api/exchanges/" + this.vhost + "/" + groupName + "/bindings/source"
-    );
+  private JsonElement getJson(String path) throws ChatException {
     var request = HttpRequest.newBuilder()
-      .uri(uri)
+      .uri(this.host.resolve(path))
       .header("Authorization", "Basic " + auth)
       .GET()
       .build();
     try {
-      var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+      var response = getClient()
+        .send(request, HttpResponse.BodyHandlers.ofString());
       if (response.statusCode() != 200) {
         throw new ChatException("Fail to retrieve data from server");
       }
-      for (var e : JsonParser.parseString(response.body()).getAsJsonArray()) {
-        String destination = e
-          .getAsJsonObject()
-          .get("destination")
-          .getAsString();
-        if (destination.startsWith(Chat.fileNamespace)) {
-          list.add(destination.substring(Chat.fileNamespace.length() + 1));
-        }
-      }
+      return JsonParser.parseString(response.body());
     } catch (final IOException e) {
       throw new ChatException("Could not retrieve data");
     } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
       throw new ChatException("Time limit to retrieve data exceeded");
     }
+  }
+
+  private HashMap<String, Set<String>> fetchRoster() throws ChatException {
+    var snapshot = new HashMap<String, Set<String>>();
+    var groupPrefix = Chat.groupNamespace + ".";
+    var textPrefix = Chat.textNamespace + ".";
+    var inboxPrefix = Chat.inboxNamespace + ".";
+
+    for (var e : getJsonArray("/api/exchanges/" + this.vhost)) {
+      var name = e.getAsJsonObject().get("name").getAsString();
+      if (name.startsWith(groupPrefix)) {
+        snapshot.put(
+          name.substring(groupPrefix.length()),
+          new HashSet<String>()
+        );
+      }
+    }
+    for (var e : getJsonArray("/api/bindings/" + this.vhost)) {
+      var source = e.getAsJsonObject().get("source").getAsString();
+      var destination = e.getAsJsonObject().get("destination").getAsString();
+      if (!source.startsWith(groupPrefix)) continue;
+
+      String member;
+      if (destination.startsWith(textPrefix)) {
+        member = destination.substring(textPrefix.length());
+      } else if (destination.startsWith(inboxPrefix)) {
+        member = destination.substring(inboxPrefix.length());
+      } else {
+        continue;
+      }
+      snapshot
+        .computeIfAbsent(
+          source.substring(groupPrefix.length()),
+          g -> new HashSet<String>()
+        )
+        .add(member);
+    }
+    return snapshot;
+  }
+
+  private void reconcile() {
+    if (!this.reconciling.compareAndSet(false, true)) return;
+
+    CompletableFuture.runAsync(() -> {
+      try {
+        this.roster.invalidate();
+        this.roster.reset(fetchRoster());
+      } catch (final ChatException e) {
+        System.err.println(e.getMessage());
+      } finally {
+        this.reconciling.set(false);
+      }
+    });
+  }
+
+  private void openControl() throws IOException {
+    if (this.controlChannel != null && this.controlChannel.isOpen()) return;
+
+    var control = this.channels.open("control", true);
+    control.exchangeDeclare(Chat.controlNamespace, "fanout", true);
+    var queue = control.queueDeclare().getQueue();
+    control.queueBind(queue, Chat.controlNamespace, "");
+    this.channels.consume(
+      control,
+      queue,
+      true,
+      Chat.controlNamespace + "." + UUID.randomUUID(),
+      new DefaultConsumer(control) {
+        @Override
+        public void handleDelivery(
+          String consumerTag,
+          Envelope envelope,
+          AMQP.BasicProperties properties,
+          byte[] body
+        ) {
+          try {
+            if (!roster.apply(RosterEvent.parseFrom(body))) {
+              reconcile();
+            }
+          } catch (final Exception e) {
+            e.printStackTrace();
+          }
+        }
+      }
+    );
+    this.controlChannel = control;
+  }
+
+  private void publishRosterEvent(
+    RosterEvent.Kind kind,
+    String groupName,
+    String userName
+  ) {
+    var builder = RosterEvent.newBuilder()
+      .setKind(kind)
+      .setGroup(groupName)
+      .setOrigin(this.origin)
+      .setSequence(this.sequence.incrementAndGet());
+
+    if (!userName.isEmpty()) {
+      builder = builder.setUser(userName);
+    }
+
+    try {
+      if (!this.controlDeclared) {
+        this.channel.exchangeDeclare(Chat.controlNamespace, "fanout", true);
+        this.controlDeclared = true;
+      }
+      this.publisher.publish(
+        Chat.controlNamespace,
+        "",
+        null,
+        builder.build().toByteArray()
+      );
+    } catch (final Exception e) {
+      return;
+    }
+  }
+
+  public ArrayList<String> listUsers(String groupName) throws ChatException {
+    if (this.roster.isReady()) {
+      if (!this.roster.hasGroup(groupName)) {
+        throw new ChatException("Given group does not exist");
+      }
+      return this.roster.listUsers(groupName);
+    }
+
+    if (!isGroupExists(groupName)) {
+      throw new ChatException("Given group does not exist");
+    }
+    var list = new ArrayList<String>();
+
+    groupName = URLEncoder.encode(
+      getGroupExchange(groupName),
+      StandardCharsets.UTF_8
+    );
+    var path =
+      "/api/exchanges/" + this.vhost + "/" + groupName + "/bindings/source";
+    for (var e : getJsonArray(path)) {
+      String destination = e.getAsJsonObject().get("destination").getAsString();
+      if (destination.startsWith(Chat.fileNamespace)) {
+        list.add(destination.substring(Chat.fileNamespace.length() + 1));
+      } else if (destination.startsWith(Chat.inboxNamespace)) {
+        list.add(destination.substring(Chat.inboxNamespace.length() + 1));
+      }
+    }
     return list;
   }
 
   public ArrayList<String> listGroups() throws ChatException {
+    if (this.roster.isReady()) {
+      return this.roster.listGroups(this.userName);
+    }
+
     var list = new ArrayList<String>();
-    var uri = this.host.resolve("/api/exchanges/" + this.vhost);
-    var request = HttpRequest.newBuilder()
-      .uri(uri)
-      .header("Authorization", "Basic " + auth)
-      .GET()
-      .build();
-    try {
-      var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-      if (response.statusCode() != 200) {
-        throw new ChatException("Fail to retrieve data from server");
-      }
-      for (var e : JsonParser.parseString(response.body()).getAsJsonArray()) {
-        String name = e.getAsJsonObject().get("name").getAsString();
-        if (name.startsWith(Chat.groupNamespace)) {
-          var groupName = name.substring(Chat.groupNamespace.length() + 1);
-          var userList = listUsers(groupName);
-          if (userList.contains(this.userName)) {
-            list.add(groupName);
-          }
+    for (var e : getJsonArray("/api/exchanges/" + this.vhost)) {
+      String name = e.getAsJsonObject().get("name").getAsString();
+      if (name.startsWith(Chat.groupNamespace)) {
+        var groupName = name.substring(Chat.groupNamespace.length() + 1);
+        var userList = listUsers(groupName);
+        if (userList.contains(this.userName)) {
+          list.add(groupName);
         }
       }
-    } catch (final IOException e) {
-      throw new ChatException("Could not retrieve data");
-    } catch (final InterruptedException e) {
-      throw new ChatException("Time limit to retrieve data exceeded");
     }
     return list;
   }
@@ -407,29 +942,88 @@ public class Chat implements AutoCloseable {
     return !this.exchange.isBlank() || !this.routingKey.isBlank();
   }
 
-  public void sendText(String text) throws ChatException {
-    var builder = Message.newBuilder()
-      .setSender(this.userName)
-      .setBody(ByteString.copyFromUtf8(text))
-      .setDatetime(
-        LocalDateTime.now().format(
-          DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")
+  private void reply(
+    String routingKey,
+    AMQP.BasicProperties properties,
+    byte[] payload
+  ) throws IOException, ChatException {
+    this.publisher.publish("", routingKey, properties, payload);
+  }
+
+  private void publishBatch(
+    String exchange,
+    String routingKey,
+    String group,
+    ArrayList<Message> messages
+  ) {
+    var first = messages.get(0);
+    String kind;
+    byte[] payload;
+
+    if (messages.size() == 1) {
+      kind = ChatHeaders.KIND_TEXT;
+      payload = ChatMessageEncoder.encode(first);
+    } else {
+      kind = ChatHeaders.KIND_BATCH;
+      payload = ChatMessageEncoder.encode(
+        ChatMessageEncoder.newBuilder(first.getSender(), group).addAllBatch(
+          messages
         )
       );
+    }
 
-    if (!this.exchange.isBlank()) {
-      builder = builder.setGroup(this.exchange);
+    var properties = ChatHeaders.create(
+      kind,
+      first.getSender(),
+      group,
+      "",
+      payload.length,
+      getInboxCopy(routingKey)
+    );
+    try {
+      this.publisher.publish(exchange, routingKey, properties, payload);
+    } catch (final Exception e) {
+      sendSystem("Could not send " + messages.size() + " messages");
     }
+  }
 
-    var payload = builder.build().toByteArray();
+  public void sendText(String text) throws ChatException {
+    if (this.coalescer.isEnabled()) {
+      this.coalescer.submit(
+        getGroupExchange(this.exchange),
+        getTextRoute(this.routingKey),
+        this.exchange,
+        ChatMessageEncoder.build(
+          ChatMessageEncoder.newBuilder(this.userName, this.exchange)
+            .setBody(ByteString.copyFromUtf8(text))
+            .setSentAt(ChatLatency.epochNanos())
+        )
+      );
+      return;
+    }
+
+    var payload = ChatMessageEncoder.encodeText(
+      this.userName,
+      this.exchange,
+      text,
+      ChatLatency.epochNanos()
+    );
+    var routingKey = getTextRoute(this.routingKey);
+    var properties = ChatHeaders.text(
+      this.userName,
+      this.exchange,
+      getInboxCopy(routingKey)
+    );
 
     try {
-      this.channel.basicPublish(
+      this.publisher.publish(
         getGroupExchange(this.exchange),
-        getTextQueue(this.routingKey),
-        null,
+        routingKey,
+        properties,
         payload
       );
+    } catch (final ChatException e) {
+      throw e;
     } catch (final Exception e) {
       throw new ChatException("Could not send message");
     }
@@ -439,6 +1033,7 @@ public class Chat implements AutoCloseable {
     Path path;
     String type;
     String filename;
+    long size;
 
     filepath = filepath.replaceFirst("^~", System.getProperty("user.home"));
 
@@ -461,47 +1056,229 @@ public class Chat implements AutoCloseable {
       throw new ChatException("Could not probe content type");
     }
 
+    try {
+      size = Files.size(path);
+    } catch (final Exception e) {
+      throw new ChatException("Could not read file size");
+    }
+
     filename = path.getFileName().toString();
 
-    new Thread(() -> {
-      byte[] content;
-      try {
-        content = Files.readAllBytes(path);
-      } catch (final Exception e) {
-        sendSystem("Could not read file " + filename);
-        return;
+    final var sender = this.userName;
+    final var group = this.exchange;
+    final var exchange = getGroupExchange(this.exchange);
+    final var queue = getFileRoute(this.routingKey);
+    final var destination = this.routingKey.isBlank()
+      ? "group=" + this.exchange
+      : "user=" + this.routingKey;
+
+    var id = this.transfers.submit(
+      filename,
+      destination,
+      size,
+      this::sendSystem,
+      transfer -> {
+        var content = Files.readAllBytes(path);
+
+        var builder = ChatMessageEncoder.newBuilder(sender, group)
+          .setBody(ChatMessageEncoder.wrap(content))
+          .setType(type)
+          .setFilename(filename)
+          .setSentAt(ChatLatency.epochNanos());
+
+        var payload = ChatMessageEncoder.encode(builder);
+        var properties = ChatHeaders.create(
+          ChatHeaders.KIND_FILE,
+          sender,
+          group,
+          filename,
+          content.length,
+          getInboxCopy(queue)
+        );
+
+        this.publisher.awaitOpen();
+        var upload = openUpload(transfer);
+        try {
+          var channel = upload.createChannel();
+          channel.confirmSelect();
+          channel.basicPublish(exchange, queue, properties, payload);
+          channel.waitForConfirmsOrDie();
+        } finally {
+          upload.abort();
+        }
+        sendSystem("File " + filename + " was sent to " + destination);
       }
+    );
+    sendSystem("File " + filename + " was queued as transfer " + id);
+  }
 
-      var builder = createDefaultMessageBuilder()
-        .setSender(this.userName)
-        .setBody(ByteString.copyFrom(content))
-        .setType(type)
-        .setFilename(filename);
+  public ArrayList<String> listTransfers() {
+    return this.transfers.list();
+  }
 
-      if (!this.exchange.isEmpty()) {
-        builder = builder.setGroup(this.exchange);
+  public void cancelTransfer(String id) throws ChatException {
+    try {
+      if (!this.transfers.cancel(Integer.parseInt(id))) {
+        throw new ChatException("Given transfer does not exist");
       }
+    } catch (final NumberFormatException e) {
+      throw new ChatException("Given transfer id is not a number");
+    }
+  }
 
-      var payload = builder.build().toByteArray();
+  public void ping(String target) throws ChatException {
+    if (target.length() < 2) {
+      throw new ChatException("No blank target given");
+    }
+
+    var symbol = target.charAt(0);
+    var name = target.substring(1);
+    String exchange;
+    String routingKey;
+    String group;
 
-      String destination = String.format(
-        this.routingKey.isBlank()
-          ? "group=" + this.exchange
-          : "user=" + this.routingKey
+    if (symbol == ChatSymbol.USER_SYMBOL) {
+      if (!isUserExists(name)) {
+        throw new ChatException("Given user does not exist");
+      }
+      exchange = "";
+      routingKey = getTextRoute(name);
+      group = "";
+    } else if (symbol == ChatSymbol.GROUP_SYMBOL) {
+      if (!isGroupExists(name)) {
+        throw new ChatException("Given group does not exist");
+      }
+      exchange = getGroupExchange(name);
+      routingKey = Chat.textNamespace;
+      group = name;
+    } else {
+      throw new ChatException(
+        "Given target must start with " +
+        ChatSymbol.USER_SYMBOL +
+        " or " +
+        ChatSymbol.GROUP_SYMBOL
       );
-      try {
-        this.channel.basicPublish(
-          getGroupExchange(this.exchange),
-          getFileQueue(this.routingKey),
-          null,
+    }
+
+    var traceId = UUID.randomUUID().toString();
+    var builder = ChatMessageEncoder.newBuilder(this.userName, group)
+      .setTraceId(traceId)
+      .setSentNanos(System.nanoTime());
+
+    var payload = ChatMessageEncoder.encode(builder);
+    var properties = ChatHeaders.builder(
+      ChatHeaders.KIND_PROBE,
+      this.userName,
+      group,
+      "",
+      payload.length,
+      getInboxCopy(routingKey)
+    )
+      .replyTo(getTextRoute(this.userName))
+      .correlationId(traceId)
+      .build();
+
+    try {
+      this.publisher.publish(exchange, routingKey, properties, payload);
+    } catch (final ChatException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new ChatException("Could not send probe");
+    }
+  }
+
+  public String getLatencyReport() {
+    return this.latency.getReport();
+  }
+
+  public boolean togglePassiveLatency() {
+    return this.latency.togglePassive();
+  }
+
+  public void sendMulticast(String targets, String text) throws ChatException {
+    var users = new LinkedHashSet<String>();
+    var groups = new LinkedHashSet<String>();
+
+    for (var target : targets.split(",")) {
+      target = target.trim();
+      if (target.length() < 2) {
+        throw new ChatException("No blank target given");
+      }
+
+      var symbol = target.charAt(0);
+      var name = target.substring(1);
+      if (symbol == ChatSymbol.USER_SYMBOL) {
+        if (!name.equals(this.userName)) users.add(name);
+      } else if (symbol == ChatSymbol.GROUP_SYMBOL) {
+        var exists = this.roster.isReady()
+          ? this.roster.hasGroup(name)
+          : isGroupExists(name);
+        if (!exists) {
+          throw new ChatException("Given group " + name + " does not exist");
+        }
+        groups.add(name);
+      } else {
+        throw new ChatException(
+          "Given target must start with " +
+          ChatSymbol.USER_SYMBOL +
+          " or " +
+          ChatSymbol.GROUP_SYMBOL
+        );
+      }
+    }
+
+    if (this.roster.isReady()) {
+      for (var groupName : groups) {
+        users.removeAll(this.roster.listUsers(groupName));
+      }
+    }
+
+    var payload = ChatMessageEncoder.encodeText(
+      this.userName,
+      "",
+      text,
+      ChatLatency.epochNanos()
+    );
+
+    try {
+      for (var groupName : groups) {
+        this.publisher.publish(
+          getGroupExchange(groupName),
+          Chat.textNamespace,
+          ChatHeaders.text(this.userName, groupName),
+          payload
+        );
+      }
+
+      for (var user : users) {
+        var routingKey = getTextRoute(user);
+        this.publisher.publish(
+          "",
+          routingKey,
+          true,
+          ChatHeaders.text(this.userName, "", getInboxCopy(routingKey)),
           payload
         );
-        sendSystem("File " + filename + " was sent to " + destination);
-      } catch (final Exception e) {
-        sendSystem("Could not send file " + filename + " to " + destination);
-        return;
       }
-    })
-      .start();
+    } catch (final ChatException e) {
+      throw e;
+    } catch (final Exception e) {
+      throw new ChatException("Could not send message");
+    }
+  }
+
+  public ArrayList<String> getHistoryPage(String conversation)
+    throws ChatException {
+    return this.history.page(conversation);
+  }
+
+  public String getChannelReport() {
+    var runtime = Runtime.getRuntime();
+    return String.format(
+      "%s\nheap: %d of %d MB used",
+      this.channels.getReport(),
+      (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024),
+      runtime.maxMemory() / (1024 * 1024)
+    );
   }
 }
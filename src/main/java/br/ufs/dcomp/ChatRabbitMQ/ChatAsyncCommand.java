@@ -0,0 +1,25 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+class ChatAsyncCommand extends ChatCommand {
+
+  private final ChatJobs jobs;
+
+  ChatAsyncCommand(
+    String[] keywords,
+    String description,
+    ChatConsumer<String[]> action,
+    ChatJobs jobs
+  ) {
+    super(keywords, description, action);
+    this.jobs = jobs;
+  }
+
+  public void apply(String[] args) {
+    if (args.length != this.keywords.length) {
+      System.err.println("Usage: " + getUsage());
+      return;
+    }
+
+    this.jobs.submit(String.join(" ", args), this.action, args);
+  }
+}
@@ -0,0 +1,163 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+class ChatChannelTracker {
+
+  private static final int siteDepth = 3;
+  private static final long leakAge = TimeUnit.SECONDS.toNanos(30);
+
+  private record Entry(
+    String purpose,
+    boolean longLived,
+    String site,
+    long openedAt
+  ) {}
+
+  private record ConsumerEntry(Channel channel, String queue, String site) {}
+
+  private final Connection connection;
+  private final Map<Channel, Entry> channels;
+  private final Map<String, ConsumerEntry> consumers;
+  private final AtomicLong opened;
+  private final AtomicLong closed;
+
+  ChatChannelTracker(Connection connection) {
+    this.connection = connection;
+    this.channels = new ConcurrentHashMap<Channel, Entry>();
+    this.consumers = new ConcurrentHashMap<String, ConsumerEntry>();
+    this.opened = new AtomicLong();
+    this.closed = new AtomicLong();
+  }
+
+  private static String getSite() {
+    return StackWalker.getInstance(
+      StackWalker.Option.RETAIN_CLASS_REFERENCE
+    ).walk(frames ->
+      frames
+        .filter(f -> f.getDeclaringClass() != ChatChannelTracker.class)
+        .limit(ChatChannelTracker.siteDepth)
+        .map(Object::toString)
+        .collect(Collectors.joining(" < "))
+    );
+  }
+
+  public Channel open(String purpose, boolean longLived) throws IOException {
+    var channel = this.connection.createChannel();
+    this.opened.incrementAndGet();
+    this.channels.put(
+      channel,
+      new Entry(purpose, longLived, getSite(), System.nanoTime())
+    );
+    channel.addShutdownListener(cause -> {
+      if (this.channels.remove(channel) != null) {
+        this.closed.incrementAndGet();
+      }
+      this.consumers.values().removeIf(c -> c.channel() == channel);
+    });
+    return channel;
+  }
+
+  public void close(Channel channel) {
+    if (channel == null) return;
+    try {
+      if (channel.isOpen()) channel.close();
+    } catch (final Exception e) {
+      return;
+    } finally {
+      if (this.channels.remove(channel) != null) {
+        this.closed.incrementAndGet();
+      }
+    }
+  }
+
+  public String consume(
+    Channel channel,
+    String queue,
+    boolean autoAck,
+    String consumerTag,
+    Consumer consumer
+  ) throws IOException {
+    this.consumers.put(
+      consumerTag,
+      new ConsumerEntry(channel, queue, getSite())
+    );
+    try {
+      return channel.basicConsume(queue, autoAck, consumerTag, consumer);
+    } catch (final IOException e) {
+      this.consumers.remove(consumerTag);
+      throw e;
+    }
+  }
+
+  public void cancel(Channel channel, String consumerTag) throws IOException {
+    try {
+      channel.basicCancel(consumerTag);
+    } finally {
+      this.consumers.remove(consumerTag);
+    }
+  }
+
+  public void cancelConsumers(Channel channel) {
+    if (channel == null) return;
+    for (var entry : this.consumers.entrySet()) {
+      if (entry.getValue().channel() != channel) continue;
+      try {
+        if (channel.isOpen()) channel.basicCancel(entry.getKey());
+      } catch (final Exception e) {
+        continue;
+      } finally {
+        this.consumers.remove(entry.getKey());
+      }
+    }
+  }
+
+  public String getReport() {
+    var now = System.nanoTime();
+    var report = new StringBuilder(
+      String.format(
+        "channels: %d open, %d opened, %d closed\nconsumers: %d active",
+        this.channels.size(),
+        this.opened.get(),
+        this.closed.get(),
+        this.consumers.size()
+      )
+    );
+    for (var entry : this.channels.entrySet()) {
+      var value = entry.getValue();
+      var age = now - value.openedAt();
+      var leaked = !value.longLived() && age > ChatChannelTracker.leakAge;
+      report.append(
+        String.format(
+          "\n%s channel %d (%s) open for %d s from %s",
+          leaked ? "LEAK" : "open",
+          entry.getKey().getChannelNumber(),
+          value.purpose(),
+          TimeUnit.NANOSECONDS.toSeconds(age),
+          value.site()
+        )
+      );
+    }
+    for (var entry : this.consumers.entrySet()) {
+      var value = entry.getValue();
+      report.append(
+        String.format(
+          "\nconsumer %s on channel %d for %s from %s",
+          entry.getKey(),
+          value.channel().getChannelNumber(),
+          value.queue(),
+          value.site()
+        )
+      );
+    }
+    return report.toString();
+  }
+}
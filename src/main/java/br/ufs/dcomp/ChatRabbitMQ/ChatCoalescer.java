@@ -0,0 +1,111 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import br.ufs.dcomp.Message;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+class ChatCoalescer implements AutoCloseable {
+
+  private static final int maxMessages = 128;
+  private static final long closeTimeout = 5;
+
+  @FunctionalInterface
+  public interface Sink {
+    void publish(
+      String exchange,
+      String routingKey,
+      String group,
+      ArrayList<Message> messages
+    );
+  }
+
+  private record Key(String exchange, String routingKey, String group) {}
+
+  private final long window;
+  private final Sink sink;
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final Map<Key, ArrayList<Message>> buffers;
+
+  ChatCoalescer(long window, Sink sink) {
+    this.window = window;
+    this.sink = sink;
+    this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+      var thread = new Thread(runnable, "chat-coalescer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.buffers = new HashMap<Key, ArrayList<Message>>();
+  }
+
+  public boolean isEnabled() {
+    return this.window > 0;
+  }
+
+  public void submit(
+    String exchange,
+    String routingKey,
+    String group,
+    Message message
+  ) {
+    var key = new Key(exchange, routingKey, group);
+    ArrayList<Message> ready;
+
+    synchronized (this) {
+      var buffer = this.buffers.get(key);
+      if (buffer == null) {
+        buffer = new ArrayList<Message>();
+        this.buffers.put(key, buffer);
+        this.scheduler.schedule(
+          () -> flush(key),
+          this.window,
+          TimeUnit.MICROSECONDS
+        );
+      }
+      buffer.add(message);
+      if (buffer.size() < ChatCoalescer.maxMessages) return;
+      ready = this.buffers.remove(key);
+    }
+
+    this.scheduler.execute(() -> publish(key, ready));
+  }
+
+  private void publish(Key key, ArrayList<Message> messages) {
+    this.sink.publish(key.exchange(), key.routingKey(), key.group(), messages);
+  }
+
+  private void flush(Key key) {
+    ArrayList<Message> messages;
+    synchronized (this) {
+      messages = this.buffers.remove(key);
+    }
+    if (messages == null) return;
+    publish(key, messages);
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      for (var key : new ArrayList<Key>(this.buffers.keySet())) {
+        this.scheduler.execute(() -> flush(key));
+      }
+    }
+    this.scheduler.shutdown();
+
+    try {
+      if (
+        !this.scheduler.awaitTermination(
+          ChatCoalescer.closeTimeout,
+          TimeUnit.SECONDS
+        )
+      ) {
+        System.err.println("Some coalesced messages could not be sent");
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
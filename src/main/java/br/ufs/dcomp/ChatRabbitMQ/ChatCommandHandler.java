@@ -1,14 +1,18 @@
 package br.ufs.dcomp.ChatRabbitMQ;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.function.Consumer;
 
 public class ChatCommandHandler {
 
   private final ChatSimpleCommand DEFAULT_COMMAND;
   private HashMap<String, ChatCommand> commandMap;
   private HashMap<Character, ChatSimpleCommand> simpleCommandMap;
+  private final ChatJobs jobs;
 
-  ChatCommandHandler(Chat chat) {
+  ChatCommandHandler(Chat chat, Consumer<String> printer) {
+    this.jobs = new ChatJobs(printer);
     this.commandMap = new HashMap<String, ChatCommand>();
     this.simpleCommandMap = new HashMap<Character, ChatSimpleCommand>();
     DEFAULT_COMMAND = new ChatSimpleCommand(
@@ -57,8 +61,25 @@ public class ChatCommandHandler {
     appendToMap(
       new ChatSimpleCommand(
         new String[] { "text-message", ChatSymbol.VARARG_TEXT },
-        "Send given message to the current destinatary",
+        "Send given message to the current destinatary, or to " +
+        ChatSymbol.USER_SYMBOL +
+        "user," +
+        ChatSymbol.GROUP_SYMBOL +
+        "group,... when prefixed with a comma-separated list of them",
         args -> {
+          var first = args[0].isEmpty() ? ' ' : args[0].charAt(0);
+          if (
+            args.length > 1 &&
+            args[0].contains(",") &&
+            (first == ChatSymbol.USER_SYMBOL ||
+              first == ChatSymbol.GROUP_SYMBOL)
+          ) {
+            chat.sendMulticast(
+              args[0],
+              String.join(" ", Arrays.copyOfRange(args, 1, args.length))
+            );
+            return;
+          }
           if (!chat.hasDestinatary()) {
             System.err.println("No destinatary has been specified");
             return;
@@ -79,83 +100,195 @@ public class ChatCommandHandler {
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "delete-group", "group-name" },
         "Delete an existing chat group that you is part of",
         args -> {
-          chat.createGroup(args[1]);
-        }
+          chat.deleteGroup(args[1]);
+        },
+        this.jobs
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "invite-user", "user-name", "group-name" },
         "Invite user to join the current group",
         args -> {
           chat.addUserToGroup(args[1], args[2]);
-        }
+        },
+        this.jobs
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "kick-user", "user-name", "group-name" },
         "Kick the user who is participating in the current group",
         args -> {
           chat.removeUserFromGroup(args[1], args[2]);
-        }
+        },
+        this.jobs
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "leave", "group-name" },
         "Leave current group",
         args -> {
           chat.leaveGroup(args[1]);
-        }
+        },
+        this.jobs
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "list-users", "group-name" },
         "List the users who are participating in the current group",
         args -> {
           var list = chat.listUsers(args[1]);
-          System.out.printf(
-            "%c%s user count: %d\n",
+          var output = String.format(
+            "%c%s user count: %d",
             ChatSymbol.GROUP_SYMBOL,
             args[1],
             list.size()
           );
-          for (var u : list) {
-            System.out.print(ChatSymbol.USER_SYMBOL + u + " ");
-          }
           if (list.size() > 0) {
-            System.out.println();
+            output += "\n";
           }
-        }
+          for (var u : list) {
+            output += ChatSymbol.USER_SYMBOL + u + " ";
+          }
+          printer.accept(output);
+        },
+        this.jobs
       )
     );
     appendToMap(
-      new ChatCommand(
+      new ChatAsyncCommand(
         new String[] { "list-groups" },
         "List the groups you are participating",
         args -> {
           var list = chat.listGroups();
-          System.out.printf(
-            "%c%s group count: %d\n",
+          var output = String.format(
+            "%c%s group count: %d",
             ChatSymbol.USER_SYMBOL,
             chat.getUserName(),
             list.size()
           );
+          if (list.size() > 0) {
+            output += "\n";
+          }
           for (var g : list) {
-            System.out.print(ChatSymbol.GROUP_SYMBOL + g + " ");
+            output += ChatSymbol.GROUP_SYMBOL + g + " ";
           }
-          if (list.size() > 0) {
-            System.out.println();
+          printer.accept(output);
+        },
+        this.jobs
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "transfers" },
+        "List the queued and running file transfers",
+        args -> {
+          var list = chat.listTransfers();
+          System.out.printf("transfer count: %d\n", list.size());
+          for (var t : list) {
+            System.out.println(t);
           }
         }
       )
     );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "cancel", "transfer-id" },
+        "Cancel a queued or running file transfer",
+        args -> {
+          chat.cancelTransfer(args[1]);
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "status" },
+        "Show the connection state and the outgoing buffer usage",
+        args -> {
+          System.out.println(chat.getStatus());
+        }
+      )
+    );
+    appendToMap(
+      new ChatAsyncCommand(
+        new String[] { "ping", "target" },
+        "Measure the round trip to the given #user or @group",
+        args -> {
+          chat.ping(args[1]);
+        },
+        this.jobs
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "latency" },
+        "Show the measured message latency percentiles",
+        args -> {
+          System.out.println(chat.getLatencyReport());
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "passive-latency" },
+        "Toggle one-way latency measurement on received messages",
+        args -> {
+          System.out.printf(
+            "Passive latency measurement is %s\n",
+            chat.togglePassiveLatency() ? "on" : "off"
+          );
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "history", "conversation" },
+        "Page through older queued messages of a #user, @group or system",
+        args -> {
+          for (var line : chat.getHistoryPage(args[1])) {
+            System.out.println(line);
+          }
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "jobs" },
+        "List the commands still running in the background",
+        args -> {
+          var list = this.jobs.list();
+          System.out.printf("job count: %d\n", list.size());
+          for (var j : list) {
+            System.out.println(j);
+          }
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "abort", "job-id" },
+        "Cancel a command running in the background",
+        args -> {
+          this.jobs.cancel(args[1]);
+        }
+      )
+    );
+    appendToMap(
+      new ChatCommand(
+        new String[] { "channels" },
+        "Show open channels and consumers with where they were opened",
+        args -> {
+          System.out.println(chat.getChannelReport());
+        }
+      )
+    );
     appendToMap(
       new ChatCommand(
         new String[] { "help" },
@@ -185,6 +318,7 @@ public class ChatCommandHandler {
         "Close the chat connection",
         args -> {
           try {
+            this.jobs.close();
             chat.close();
           } catch (final Exception e) {
             System.err.println(e.getMessage());
@@ -0,0 +1,8 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+public enum ChatConnectionState {
+  OPEN,
+  BLOCKED,
+  RECOVERING,
+  CLOSED,
+}
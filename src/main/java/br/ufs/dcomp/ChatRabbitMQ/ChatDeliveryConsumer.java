@@ -0,0 +1,277 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import br.ufs.dcomp.Message;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class ChatDeliveryConsumer extends DefaultConsumer {
+
+  @FunctionalInterface
+  public interface Replier {
+    void reply(String routingKey, AMQP.BasicProperties properties, byte[] body)
+      throws IOException, ChatException;
+  }
+
+  private final String userName;
+  private final Consumer<String> printer;
+  private final Replier replier;
+  private final ChatDiskWriter diskWriter;
+  private final ChatLatency latency;
+  private final ChatHistory history;
+
+  ChatDeliveryConsumer(
+    Channel channel,
+    String userName,
+    Consumer<String> printer,
+    Replier replier,
+    ChatDiskWriter diskWriter,
+    ChatLatency latency,
+    ChatHistory history
+  ) {
+    super(channel);
+    this.userName = userName;
+    this.printer = printer;
+    this.replier = replier;
+    this.diskWriter = diskWriter;
+    this.latency = latency;
+    this.history = history;
+  }
+
+  public static String render(Message message, String group) {
+    if (message.getBatchCount() > 0) {
+      var lines = new ArrayList<String>();
+      for (var inner : message.getBatchList()) {
+        lines.add(render(inner, group));
+      }
+      return String.join("\n", lines);
+    }
+    if (!message.hasSender()) {
+      return String.format(
+        "(%s) System reports: %s",
+        message.getDatetime(),
+        message
+          .getBody()
+          .toStringUtf8()
+          .replaceFirst("user=", ChatSymbol.USER_SYMBOL.toString())
+          .replaceFirst("group=", ChatSymbol.GROUP_SYMBOL.toString())
+      );
+    }
+    return String.format(
+      "(%s) %s%s says: %s",
+      message.getDatetime(),
+      ChatSymbol.USER_SYMBOL + message.getSender(),
+      group == null ? "" : ChatSymbol.GROUP_SYMBOL + group,
+      message.getBody().toStringUtf8()
+    );
+  }
+
+  private boolean catchUp(
+    Envelope envelope,
+    AMQP.BasicProperties properties,
+    byte[] body
+  ) throws IOException {
+    String conversation = null;
+    String group = null;
+    var live = false;
+
+    try {
+      var sender = ChatHeaders.get(properties, ChatHeaders.SENDER);
+      var kind = ChatHeaders.get(properties, ChatHeaders.KIND);
+      group = ChatHeaders.get(properties, ChatHeaders.GROUP);
+
+      if (kind == null) {
+        var message = Message.parseFrom(body);
+        sender = message.hasSender() ? message.getSender() : null;
+        group = message.hasGroup() ? message.getGroup() : null;
+        if (message.hasType() && message.hasFilename()) {
+          kind = ChatHeaders.KIND_FILE;
+        } else if (message.hasSender()) {
+          kind = ChatHeaders.KIND_TEXT;
+        } else {
+          kind = ChatHeaders.KIND_SYSTEM;
+        }
+      }
+
+      if (ChatHeaders.KIND_FILE.equals(kind)) {
+        live = true;
+      } else if (
+        !this.userName.equals(sender) &&
+        (ChatHeaders.KIND_TEXT.equals(kind) ||
+          ChatHeaders.KIND_BATCH.equals(kind) ||
+          ChatHeaders.KIND_SYSTEM.equals(kind))
+      ) {
+        conversation = ChatHistory.getConversation(sender, group);
+      }
+    } finally {
+      var finished = conversation == null
+        ? this.history.skip()
+        : this.history.store(conversation, group, body);
+      if (finished) {
+        this.printer.accept(this.history.summarize());
+      }
+    }
+
+    if (live) return false;
+    ack(envelope);
+    return true;
+  }
+
+  private void watchCatchUp(String consumerTag) {
+    var idle = this.history.getIdleTimeout().toMillis();
+    CompletableFuture.delayedExecutor(idle, TimeUnit.MILLISECONDS).execute(
+      () -> {
+        if (this.history.finishIdle(consumerTag)) {
+          this.printer.accept(this.history.summarize());
+        } else if (this.history.isCatchingUp(consumerTag)) {
+          watchCatchUp(consumerTag);
+        }
+      }
+    );
+  }
+
+  @Override
+  public void handleConsumeOk(String consumerTag) {
+    super.handleConsumeOk(consumerTag);
+    if (this.history.isCatchingUp(consumerTag)) {
+      watchCatchUp(consumerTag);
+    }
+  }
+
+  private void replyProbe(AMQP.BasicProperties properties, byte[] body)
+    throws IOException {
+    if (properties.getReplyTo() == null) return;
+
+    var reply = ChatHeaders.builder(
+      ChatHeaders.KIND_PROBE_REPLY,
+      this.userName,
+      "",
+      "",
+      body.length
+    )
+      .correlationId(properties.getCorrelationId())
+      .build();
+    try {
+      this.replier.reply(properties.getReplyTo(), reply, body);
+    } catch (final ChatException e) {
+      return;
+    }
+  }
+
+  private void ack(Envelope envelope) {
+    try {
+      getChannel().basicAck(envelope.getDeliveryTag(), false);
+    } catch (final Exception e) {
+      return;
+    }
+  }
+
+  @Override
+  public void handleDelivery(
+    String consumerTag,
+    Envelope envelope,
+    AMQP.BasicProperties properties,
+    byte[] body
+  ) {
+    try {
+      if (
+        this.history.isCatchingUp(consumerTag) &&
+        catchUp(envelope, properties, body)
+      ) {
+        return;
+      }
+
+      var sender = ChatHeaders.get(properties, ChatHeaders.SENDER);
+      if (this.userName.equals(sender)) {
+        ack(envelope);
+        return;
+      }
+
+      var kind = ChatHeaders.get(properties, ChatHeaders.KIND);
+      if (ChatHeaders.KIND_PROBE.equals(kind)) {
+        replyProbe(properties, body);
+        ack(envelope);
+        return;
+      }
+
+      var message = Message.parseFrom(body);
+
+      if (ChatHeaders.KIND_PROBE_REPLY.equals(kind)) {
+        var elapsed = this.latency.recordRoundTrip(message.getSentNanos());
+        this.printer.accept(
+          String.format(
+            "Pong from %s: %.3f ms (trace %s)",
+            ChatSymbol.USER_SYMBOL + sender,
+            elapsed / 1e6,
+            message.getTraceId()
+          )
+        );
+        ack(envelope);
+        return;
+      }
+
+      if (message.getSender().equals(this.userName)) {
+        ack(envelope);
+        return;
+      }
+
+      if (this.latency.isPassive()) {
+        if (message.hasSentAt()) {
+          this.latency.recordOneWay(message.getSentAt());
+        }
+        for (var inner : message.getBatchList()) {
+          this.latency.recordOneWay(inner.getSentAt());
+        }
+      }
+
+      if (!message.hasSender()) {
+        this.printer.accept(render(message, null));
+        ack(envelope);
+        return;
+      }
+
+      if (message.hasType() && message.hasFilename()) {
+        this.diskWriter.write(
+          message.getFilename(),
+          message.getBody().toByteArray(),
+          path -> {
+            this.printer.accept(
+              String.format(
+                "(%s) File %s received from %s%s",
+                message.getDatetime(),
+                message.getFilename(),
+                ChatSymbol.USER_SYMBOL + message.getSender(),
+                message.hasGroup()
+                  ? ChatSymbol.GROUP_SYMBOL + message.getGroup()
+                  : ""
+              )
+            );
+            ack(envelope);
+          },
+          e -> {
+            e.printStackTrace();
+            ack(envelope);
+          }
+        );
+        return;
+      }
+
+      var group = ChatHeaders.get(properties, ChatHeaders.GROUP);
+      if (group == null && message.hasGroup()) {
+        group = message.getGroup();
+      }
+
+      this.printer.accept(render(message, group));
+      ack(envelope);
+    } catch (final Exception e) {
+      e.printStackTrace();
+      ack(envelope);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class ChatDiskWriter implements AutoCloseable {
+
+  private final Path folder;
+  private final ThreadPoolExecutor executor;
+
+  ChatDiskWriter(String folder, int threads, int capacity) {
+    this.folder = Path.of(folder);
+    this.executor = new ThreadPoolExecutor(
+      threads,
+      threads,
+      0L,
+      TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(capacity),
+      runnable -> {
+        var thread = new Thread(runnable, "chat-disk-writer");
+        thread.setDaemon(true);
+        return thread;
+      },
+      new ThreadPoolExecutor.CallerRunsPolicy()
+    );
+  }
+
+  public void write(
+    String filename,
+    byte[] content,
+    Consumer<Path> onSuccess,
+    Consumer<Exception> onFailure
+  ) {
+    var path = this.folder.resolve(filename);
+    this.executor.execute(() -> {
+      try {
+        Files.write(path, content);
+        onSuccess.accept(path);
+      } catch (final Exception e) {
+        onFailure.accept(e);
+      }
+    });
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdown();
+  }
+}
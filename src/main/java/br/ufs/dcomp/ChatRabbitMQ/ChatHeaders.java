@@ -0,0 +1,140 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.rabbitmq.client.AMQP;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+class ChatHeaders {
+
+  public static final String SENDER = "x-chat-sender";
+  public static final String GROUP = "x-chat-group";
+  public static final String KIND = "x-chat-kind";
+  public static final String FILENAME = "x-chat-filename";
+  public static final String SIZE = "x-chat-size";
+  public static final String CC = "CC";
+
+  public static final String KIND_TEXT = "text";
+  public static final String KIND_FILE = "file";
+  public static final String KIND_SYSTEM = "system";
+  public static final String KIND_BATCH = "batch";
+  public static final String KIND_PROBE = "probe";
+  public static final String KIND_PROBE_REPLY = "probe-reply";
+
+  private record Cached(
+    String sender,
+    String group,
+    String copy,
+    AMQP.BasicProperties properties
+  ) {}
+
+  private static final List<String> groupCopies = List.of(
+    Chat.inboxNamespace
+  );
+
+  private static volatile Cached textProperties;
+
+  private ChatHeaders() {}
+
+  public static AMQP.BasicProperties create(
+    String kind,
+    String sender,
+    String group,
+    String filename,
+    long size
+  ) {
+    return builder(kind, sender, group, filename, size, "").build();
+  }
+
+  public static AMQP.BasicProperties create(
+    String kind,
+    String sender,
+    String group,
+    String filename,
+    long size,
+    String copy
+  ) {
+    return builder(kind, sender, group, filename, size, copy).build();
+  }
+
+  public static AMQP.BasicProperties text(String sender, String group) {
+    return text(sender, group, "");
+  }
+
+  public static AMQP.BasicProperties text(
+    String sender,
+    String group,
+    String copy
+  ) {
+    var cached = textProperties;
+    if (
+      cached == null ||
+      !cached.sender().equals(sender) ||
+      !cached.group().equals(group) ||
+      !cached.copy().equals(copy)
+    ) {
+      var headers = new HashMap<String, Object>();
+      headers.put(KIND, KIND_TEXT);
+      if (!sender.isEmpty()) headers.put(SENDER, sender);
+      if (!group.isEmpty()) headers.put(GROUP, group);
+      putCopies(headers, group, copy);
+      cached = new Cached(
+        sender,
+        group,
+        copy,
+        new AMQP.BasicProperties.Builder()
+          .headers(Collections.unmodifiableMap(headers))
+          .build()
+      );
+      textProperties = cached;
+    }
+    return cached.properties();
+  }
+
+  public static AMQP.BasicProperties.Builder builder(
+    String kind,
+    String sender,
+    String group,
+    String filename,
+    long size
+  ) {
+    return builder(kind, sender, group, filename, size, "");
+  }
+
+  public static AMQP.BasicProperties.Builder builder(
+    String kind,
+    String sender,
+    String group,
+    String filename,
+    long size,
+    String copy
+  ) {
+    var headers = new HashMap<String, Object>();
+    headers.put(KIND, kind);
+    headers.put(SIZE, size);
+    if (!sender.isEmpty()) headers.put(SENDER, sender);
+    if (!group.isEmpty()) headers.put(GROUP, group);
+    putCopies(headers, group, copy);
+    if (!filename.isEmpty()) headers.put(FILENAME, filename);
+
+    return new AMQP.BasicProperties.Builder().headers(headers);
+  }
+
+  private static void putCopies(
+    HashMap<String, Object> headers,
+    String group,
+    String copy
+  ) {
+    if (!group.isEmpty()) {
+      headers.put(CC, groupCopies);
+    } else if (!copy.isEmpty()) {
+      headers.put(CC, List.of(copy));
+    }
+  }
+
+  public static String get(AMQP.BasicProperties properties, String key) {
+    if (properties == null || properties.getHeaders() == null) return null;
+    var value = properties.getHeaders().get(key);
+    return value == null ? null : value.toString();
+  }
+}
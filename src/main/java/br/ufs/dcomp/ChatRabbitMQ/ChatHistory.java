@@ -0,0 +1,158 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import br.ufs.dcomp.Message;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class ChatHistory {
+
+  private static final int pageSize = 10;
+  private static final String systemConversation = "system";
+
+  private final Map<String, ArrayList<byte[]>> conversations;
+  private final Map<String, String> groups;
+  private final Map<String, Integer> cursors;
+  private final Duration idleTimeout;
+
+  private String consumerTag;
+  private long remaining;
+  private long total;
+  private long lastDelivery;
+  private Runnable onFinish;
+
+  ChatHistory() {
+    this(Duration.ofSeconds(2));
+  }
+
+  ChatHistory(Duration idleTimeout) {
+    this.idleTimeout = idleTimeout;
+    this.conversations = new LinkedHashMap<String, ArrayList<byte[]>>();
+    this.groups = new HashMap<String, String>();
+    this.cursors = new HashMap<String, Integer>();
+    this.consumerTag = "";
+  }
+
+  public static String getConversation(String sender, String group) {
+    if (group != null) return ChatSymbol.GROUP_SYMBOL + group;
+    if (sender != null) return ChatSymbol.USER_SYMBOL + sender;
+    return systemConversation;
+  }
+
+  public synchronized void beginCatchUp(
+    String consumerTag,
+    long count,
+    Runnable onFinish
+  ) {
+    this.conversations.clear();
+    this.groups.clear();
+    this.cursors.clear();
+    this.consumerTag = consumerTag;
+    this.remaining = count;
+    this.total = count;
+    this.lastDelivery = System.nanoTime();
+    this.onFinish = onFinish;
+  }
+
+  public Duration getIdleTimeout() {
+    return this.idleTimeout;
+  }
+
+  public synchronized boolean isCatchingUp(String consumerTag) {
+    return this.remaining > 0 && this.consumerTag.equals(consumerTag);
+  }
+
+  public synchronized boolean store(
+    String conversation,
+    String group,
+    byte[] body
+  ) {
+    this.conversations
+      .computeIfAbsent(conversation, c -> new ArrayList<byte[]>())
+      .add(body);
+    if (group != null) this.groups.put(conversation, group);
+    return skip();
+  }
+
+  public synchronized boolean skip() {
+    if (this.remaining <= 0) return false;
+    this.lastDelivery = System.nanoTime();
+    if (--this.remaining > 0) return false;
+    finish();
+    return true;
+  }
+
+  public synchronized boolean finishIdle(String consumerTag) {
+    if (!isCatchingUp(consumerTag)) return false;
+    if (System.nanoTime() - this.lastDelivery < this.idleTimeout.toNanos()) {
+      return false;
+    }
+    this.remaining = 0;
+    finish();
+    return true;
+  }
+
+  private void finish() {
+    if (this.onFinish != null) this.onFinish.run();
+    this.onFinish = null;
+  }
+
+  private String render(String conversation, byte[] body) throws Exception {
+    var message = Message.parseFrom(body);
+    return ChatDeliveryConsumer.render(message, this.groups.get(conversation));
+  }
+
+  public synchronized String summarize() {
+    var summary = new StringBuilder(
+      String.format("Caught up on %d queued messages", this.total)
+    );
+    for (var entry : this.conversations.entrySet()) {
+      var bodies = entry.getValue();
+      String last;
+      try {
+        last = render(entry.getKey(), bodies.get(bodies.size() - 1));
+      } catch (final Exception e) {
+        last = "could not decode last message";
+      }
+      summary.append(
+        String.format(
+          "\n%s: %d messages, last %s",
+          entry.getKey(),
+          bodies.size(),
+          last
+        )
+      );
+    }
+    if (!this.conversations.isEmpty()) {
+      summary.append(
+        "\nUse " + ChatSymbol.COMMAND_SYMBOL + "history <conversation> to page"
+      );
+    }
+    return summary.toString();
+  }
+
+  public synchronized ArrayList<String> page(String conversation)
+    throws ChatException {
+    var bodies = this.conversations.get(conversation);
+    if (bodies == null) {
+      throw new ChatException("No queued messages for given conversation");
+    }
+
+    var end = this.cursors.getOrDefault(conversation, bodies.size());
+    if (end == 0) end = bodies.size();
+    var start = Math.max(0, end - ChatHistory.pageSize);
+    this.cursors.put(conversation, start);
+
+    var list = new ArrayList<String>();
+    for (var i = start; i < end; ++i) {
+      try {
+        list.add(render(conversation, bodies.get(i)));
+      } catch (final Exception e) {
+        list.add("could not decode message");
+      }
+    }
+    return list;
+  }
+}
@@ -0,0 +1,91 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+class ChatJobs implements AutoCloseable {
+
+  private record Job(int id, String description, Future<?> future) {}
+
+  private final ExecutorService executor;
+  private final Consumer<String> printer;
+  private final AtomicInteger nextId;
+  private final Map<Integer, Job> jobs;
+
+  ChatJobs(Consumer<String> printer) {
+    this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    this.printer = printer;
+    this.nextId = new AtomicInteger(1);
+    this.jobs = new ConcurrentSkipListMap<Integer, Job>();
+  }
+
+  private synchronized boolean isCancelled(int id) {
+    return (
+      Thread.currentThread().isInterrupted() || !this.jobs.containsKey(id)
+    );
+  }
+
+  public int submit(
+    String description,
+    ChatConsumer<String[]> action,
+    String[] args
+  ) {
+    var id = this.nextId.getAndIncrement();
+
+    synchronized (this) {
+      var future = this.executor.submit(() -> {
+        try {
+          action.accept(args);
+        } catch (final ChatException e) {
+          if (!isCancelled(id)) {
+            this.printer.accept(e.getMessage());
+          }
+        } catch (final RuntimeException e) {
+          if (!isCancelled(id)) {
+            this.printer.accept("Job " + id + " failed: " + e);
+          }
+        } finally {
+          synchronized (this) {
+            this.jobs.remove(id);
+          }
+        }
+      });
+      this.jobs.put(id, new Job(id, description, future));
+    }
+    return id;
+  }
+
+  public ArrayList<String> list() {
+    var list = new ArrayList<String>();
+    for (var job : this.jobs.values()) {
+      list.add(String.format("[%d] %s", job.id(), job.description()));
+    }
+    return list;
+  }
+
+  public void cancel(String id) throws ChatException {
+    Job job;
+    try {
+      job = this.jobs.remove(Integer.parseInt(id));
+    } catch (final NumberFormatException e) {
+      throw new ChatException("Given job id is not a number");
+    }
+
+    if (job == null) {
+      throw new ChatException("Given job does not exist");
+    }
+    job.future().cancel(true);
+    this.printer.accept("Job " + id + " was cancelled");
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdownNow();
+  }
+}
@@ -0,0 +1,67 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+class ChatLatency {
+
+  private final Histogram roundTrip;
+  private final Histogram oneWay;
+
+  private volatile boolean passive;
+
+  ChatLatency(boolean passive) {
+    this.roundTrip = new ConcurrentHistogram(3);
+    this.oneWay = new ConcurrentHistogram(3);
+    this.passive = passive;
+  }
+
+  public static long epochNanos() {
+    var now = Instant.now();
+    return TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+  }
+
+  public boolean isPassive() {
+    return this.passive;
+  }
+
+  public boolean togglePassive() {
+    this.passive = !this.passive;
+    return this.passive;
+  }
+
+  public long recordRoundTrip(long sentNanos) {
+    var elapsed = Math.max(0, System.nanoTime() - sentNanos);
+    this.roundTrip.recordValue(elapsed);
+    return elapsed;
+  }
+
+  public void recordOneWay(long sentAt) {
+    this.oneWay.recordValue(Math.max(0, epochNanos() - sentAt));
+  }
+
+  private static String describe(String name, Histogram histogram) {
+    if (histogram.getTotalCount() == 0) {
+      return name + ": no samples";
+    }
+    return String.format(
+      "%s: %d samples, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms",
+      name,
+      histogram.getTotalCount(),
+      histogram.getValueAtPercentile(50) / 1e6,
+      histogram.getValueAtPercentile(99) / 1e6,
+      histogram.getValueAtPercentile(99.9) / 1e6,
+      histogram.getMaxValue() / 1e6
+    );
+  }
+
+  public String getReport() {
+    return (
+      describe("round trip", this.roundTrip) +
+      "\n" +
+      describe(this.passive ? "one way" : "one way (passive off)", this.oneWay)
+    );
+  }
+}
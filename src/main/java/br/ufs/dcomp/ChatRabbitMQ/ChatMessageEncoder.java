@@ -0,0 +1,166 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import br.ufs.dcomp.Message;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnsafeByteOperations;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+class ChatMessageEncoder {
+
+  private record Cached<T>(String key, T value) {}
+
+  private record Datetime(long second, String text) {}
+
+  private static final DateTimeFormatter formatter =
+    DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+  private static final ThreadLocal<Message.Builder> builders =
+    ThreadLocal.withInitial(Message::newBuilder);
+
+  private static volatile Datetime datetime = new Datetime(-1, "");
+  private static volatile Cached<ByteString> sender = new Cached<ByteString>(
+    "",
+    ByteString.EMPTY
+  );
+  private static volatile Cached<ByteString> group = new Cached<ByteString>(
+    "",
+    ByteString.EMPTY
+  );
+
+  private ChatMessageEncoder() {}
+
+  public static String getDatetime() {
+    var second = System.currentTimeMillis() / 1000;
+    var cached = datetime;
+    if (cached.second() != second) {
+      var text = LocalDateTime.ofInstant(
+        Instant.ofEpochSecond(second),
+        ZoneId.systemDefault()
+      ).format(formatter);
+      cached = new Datetime(second, text);
+      datetime = cached;
+    }
+    return cached.text();
+  }
+
+  private static ByteString getSenderBytes(String userName) {
+    var cached = sender;
+    if (!cached.key().equals(userName)) {
+      cached = new Cached<ByteString>(
+        userName,
+        ByteString.copyFromUtf8(userName)
+      );
+      sender = cached;
+    }
+    return cached.value();
+  }
+
+  private static ByteString getGroupBytes(String groupName) {
+    var cached = group;
+    if (!cached.key().equals(groupName)) {
+      cached = new Cached<ByteString>(
+        groupName,
+        ByteString.copyFromUtf8(groupName)
+      );
+      group = cached;
+    }
+    return cached.value();
+  }
+
+  public static Message.Builder newBuilder(String userName, String groupName) {
+    var builder = builders.get().clear().setDatetime(getDatetime());
+    if (!userName.isEmpty()) {
+      builder.setSenderBytes(getSenderBytes(userName));
+    }
+    if (!groupName.isEmpty()) {
+      builder.setGroupBytes(getGroupBytes(groupName));
+    }
+    return builder;
+  }
+
+  public static ByteString wrap(byte[] content) {
+    return UnsafeByteOperations.unsafeWrap(content);
+  }
+
+  public static Message build(Message.Builder builder) {
+    var message = builder.buildPartial();
+    builder.clear();
+    return message;
+  }
+
+  public static byte[] encode(Message.Builder builder) {
+    return encode(build(builder));
+  }
+
+  public static byte[] encodeText(
+    String userName,
+    String groupName,
+    String text,
+    long sentAt
+  ) {
+    var datetime = getDatetime();
+    var senderBytes = userName.isEmpty() ? null : getSenderBytes(userName);
+    var groupBytes = groupName.isEmpty() ? null : getGroupBytes(groupName);
+
+    var size =
+      CodedOutputStream.computeStringSize(
+        Message.DATETIME_FIELD_NUMBER,
+        datetime
+      ) +
+      CodedOutputStream.computeInt64Size(Message.SENT_AT_FIELD_NUMBER, sentAt);
+    if (!text.isEmpty()) {
+      size += CodedOutputStream.computeStringSize(
+        Message.BODY_FIELD_NUMBER,
+        text
+      );
+    }
+    if (senderBytes != null) {
+      size += CodedOutputStream.computeBytesSize(
+        Message.SENDER_FIELD_NUMBER,
+        senderBytes
+      );
+    }
+    if (groupBytes != null) {
+      size += CodedOutputStream.computeBytesSize(
+        Message.GROUP_FIELD_NUMBER,
+        groupBytes
+      );
+    }
+
+    var payload = new byte[size];
+    var output = CodedOutputStream.newInstance(payload);
+    try {
+      output.writeString(Message.DATETIME_FIELD_NUMBER, datetime);
+      if (!text.isEmpty()) {
+        output.writeString(Message.BODY_FIELD_NUMBER, text);
+      }
+      if (senderBytes != null) {
+        output.writeBytes(Message.SENDER_FIELD_NUMBER, senderBytes);
+      }
+      if (groupBytes != null) {
+        output.writeBytes(Message.GROUP_FIELD_NUMBER, groupBytes);
+      }
+      output.writeInt64(Message.SENT_AT_FIELD_NUMBER, sentAt);
+      output.checkNoSpaceLeft();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return payload;
+  }
+
+  public static byte[] encode(Message message) {
+    var payload = new byte[message.getSerializedSize()];
+    var output = CodedOutputStream.newInstance(payload);
+    try {
+      message.writeTo(output);
+      output.checkNoSpaceLeft();
+    } catch (final IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return payload;
+  }
+}
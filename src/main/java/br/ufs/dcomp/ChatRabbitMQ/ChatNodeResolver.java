@@ -0,0 +1,73 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+class ChatNodeResolver implements AddressResolver {
+
+  private final List<Address> addresses;
+
+  private volatile Address preferred;
+
+  ChatNodeResolver(String hosts) {
+    this.addresses = List.of(Address.parseAddresses(hosts));
+    this.preferred = null;
+  }
+
+  private static int getPort(Address address) {
+    return address.getPort() == -1
+      ? ConnectionFactory.DEFAULT_AMQP_PORT
+      : address.getPort();
+  }
+
+  public boolean isClustered() {
+    return this.addresses.size() > 1;
+  }
+
+  public Address prefer(String node) {
+    var host = node.substring(node.indexOf('@') + 1);
+    var address = this.addresses.stream()
+      .filter(a -> a.getHost().equals(host))
+      .findFirst()
+      .orElseGet(() -> new Address(host, getPort(this.addresses.get(0))));
+    this.preferred = address;
+    return address;
+  }
+
+  public boolean isPreferred(Connection connection) {
+    var address = this.preferred;
+    if (address == null) return true;
+
+    try {
+      return (
+        connection.getPort() == getPort(address) &&
+        connection.getAddress().equals(InetAddress.getByName(address.getHost()))
+      );
+    } catch (final Exception e) {
+      return true;
+    }
+  }
+
+  @Override
+  public List<Address> getAddresses() {
+    var address = this.preferred;
+    if (address == null) return this.addresses;
+
+    var ordered = new ArrayList<Address>();
+    ordered.add(address);
+    for (var a : this.addresses) {
+      if (!a.equals(address)) ordered.add(a);
+    }
+    return ordered;
+  }
+
+  @Override
+  public List<Address> maybeShuffle(List<Address> input) {
+    return input;
+  }
+}
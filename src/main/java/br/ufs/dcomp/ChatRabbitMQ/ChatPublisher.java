@@ -0,0 +1,195 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+class ChatPublisher {
+
+  private record Pending(
+    String exchange,
+    String routingKey,
+    boolean mandatory,
+    AMQP.BasicProperties properties,
+    byte[] payload
+  ) {}
+
+  private final Supplier<Channel> channel;
+  private final long budget;
+  private final ArrayDeque<Pending> pending;
+
+  private ChatConnectionState state;
+  private boolean draining;
+  private long bufferedBytes;
+  private long blockedCount;
+  private long blockedSince;
+  private long blockedNanos;
+
+  ChatPublisher(Connection connection, Supplier<Channel> channel, long budget) {
+    this.channel = channel;
+    this.budget = budget;
+    this.pending = new ArrayDeque<Pending>();
+    this.state = ChatConnectionState.OPEN;
+
+    connection.addBlockedListener(
+      reason -> setState(ChatConnectionState.BLOCKED),
+      () -> setState(ChatConnectionState.OPEN)
+    );
+    connection.addShutdownListener(cause -> {
+      if (cause.isInitiatedByApplication()) {
+        setState(ChatConnectionState.CLOSED);
+      } else {
+        setState(ChatConnectionState.RECOVERING);
+      }
+    });
+    if (connection instanceof Recoverable recoverable) {
+      recoverable.addRecoveryListener(
+        new RecoveryListener() {
+          public void handleRecovery(Recoverable recoverable) {
+            setState(ChatConnectionState.OPEN);
+          }
+
+          public void handleRecoveryStarted(Recoverable recoverable) {
+            setState(ChatConnectionState.RECOVERING);
+          }
+        }
+      );
+    }
+  }
+
+  private void setState(ChatConnectionState state) {
+    synchronized (this) {
+      if (this.state == state) return;
+
+      var now = System.nanoTime();
+      if (state == ChatConnectionState.BLOCKED) {
+        this.blockedCount++;
+        this.blockedSince = now;
+      } else if (this.state == ChatConnectionState.BLOCKED) {
+        this.blockedNanos += now - this.blockedSince;
+      }
+
+      this.state = state;
+      notifyAll();
+
+      if (state != ChatConnectionState.OPEN || this.pending.isEmpty()) return;
+      if (this.draining) return;
+      this.draining = true;
+    }
+
+    var thread = new Thread(this::drain, "chat-publisher-drain");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void drain() {
+    while (true) {
+      Pending next;
+      synchronized (this) {
+        if (this.state != ChatConnectionState.OPEN || this.pending.isEmpty()) {
+          this.draining = false;
+          return;
+        }
+        next = this.pending.poll();
+        this.bufferedBytes -= next.payload().length;
+      }
+
+      try {
+        this.channel
+          .get()
+          .basicPublish(
+            next.exchange(),
+            next.routingKey(),
+            next.mandatory(),
+            next.properties(),
+            next.payload()
+          );
+      } catch (final Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  public ChatConnectionState getState() {
+    synchronized (this) {
+      return this.state;
+    }
+  }
+
+  public void publish(
+    String exchange,
+    String routingKey,
+    AMQP.BasicProperties properties,
+    byte[] payload
+  ) throws IOException, ChatException {
+    publish(exchange, routingKey, false, properties, payload);
+  }
+
+  public void publish(
+    String exchange,
+    String routingKey,
+    boolean mandatory,
+    AMQP.BasicProperties properties,
+    byte[] payload
+  ) throws IOException, ChatException {
+    synchronized (this) {
+      if (
+        this.state != ChatConnectionState.OPEN ||
+        this.draining ||
+        !this.pending.isEmpty()
+      ) {
+        if (this.state == ChatConnectionState.CLOSED) {
+          throw new ChatException("Connection is closed");
+        }
+        if (this.bufferedBytes + payload.length > this.budget) {
+          throw new ChatException("Outgoing buffer is full");
+        }
+        this.pending.add(
+          new Pending(exchange, routingKey, mandatory, properties, payload)
+        );
+        this.bufferedBytes += payload.length;
+        return;
+      }
+    }
+
+    this.channel
+      .get()
+      .basicPublish(exchange, routingKey, mandatory, properties, payload);
+  }
+
+  public void awaitOpen() throws InterruptedException, ChatException {
+    synchronized (this) {
+      while (this.state != ChatConnectionState.OPEN) {
+        if (this.state == ChatConnectionState.CLOSED) {
+          throw new ChatException("Connection is closed");
+        }
+        wait();
+      }
+    }
+  }
+
+  public String getStatus() {
+    synchronized (this) {
+      var blocked = this.blockedNanos;
+      if (this.state == ChatConnectionState.BLOCKED) {
+        blocked += System.nanoTime() - this.blockedSince;
+      }
+      return String.format(
+        "state: %s\n" +
+        "buffered: %d messages, %d of %d bytes\n" +
+        "blocked: %d times, %d ms",
+        this.state.toString().toLowerCase(),
+        this.pending.size(),
+        this.bufferedBytes,
+        this.budget,
+        this.blockedCount,
+        blocked / 1_000_000
+      );
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import br.ufs.dcomp.RosterEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+class ChatRoster {
+
+  private final Map<String, Set<String>> members;
+  private final Map<String, Long> sequences;
+  private final ArrayList<RosterEvent> pending;
+
+  private boolean ready;
+
+  ChatRoster() {
+    this.members = new HashMap<String, Set<String>>();
+    this.sequences = new HashMap<String, Long>();
+    this.pending = new ArrayList<RosterEvent>();
+    this.ready = false;
+  }
+
+  public synchronized boolean isReady() {
+    return this.ready;
+  }
+
+  public synchronized void invalidate() {
+    this.ready = false;
+    this.pending.clear();
+  }
+
+  public synchronized void reset(Map<String, Set<String>> snapshot) {
+    this.members.clear();
+    for (var entry : snapshot.entrySet()) {
+      this.members.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+    }
+    for (var event : this.pending) {
+      update(event);
+    }
+    this.pending.clear();
+    this.ready = true;
+  }
+
+  public synchronized boolean apply(RosterEvent event) {
+    var last = this.sequences.put(event.getOrigin(), event.getSequence());
+    var gap = last != null && event.getSequence() != last + 1;
+
+    if (!this.ready) {
+      this.pending.add(event);
+      return true;
+    }
+
+    update(event);
+    return !gap;
+  }
+
+  private void update(RosterEvent event) {
+    switch (event.getKind()) {
+      case GROUP_CREATED:
+        this.members.putIfAbsent(event.getGroup(), new HashSet<String>());
+        break;
+      case GROUP_DELETED:
+        this.members.remove(event.getGroup());
+        break;
+      case USER_ADDED:
+        this.members
+          .computeIfAbsent(event.getGroup(), g -> new HashSet<String>())
+          .add(event.getUser());
+        break;
+      case USER_REMOVED:
+        var users = this.members.get(event.getGroup());
+        if (users != null) users.remove(event.getUser());
+        break;
+      default:
+        break;
+    }
+  }
+
+  public synchronized boolean hasGroup(String groupName) {
+    return this.members.containsKey(groupName);
+  }
+
+  public synchronized ArrayList<String> listUsers(String groupName) {
+    return new ArrayList<String>(
+      this.members.getOrDefault(groupName, new HashSet<String>())
+    );
+  }
+
+  public synchronized ArrayList<String> listGroups(String userName) {
+    var list = new ArrayList<String>();
+    for (var entry : this.members.entrySet()) {
+      if (entry.getValue().contains(userName)) {
+        list.add(entry.getKey());
+      }
+    }
+    return list;
+  }
+}
@@ -0,0 +1,120 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.function.LongConsumer;
+import javax.net.SocketFactory;
+
+class ChatThrottledSocketFactory extends SocketFactory {
+
+  private static final int chunkSize = 16 * 1024;
+
+  private final List<ChatTokenBucket> buckets;
+  private final LongConsumer progress;
+
+  ChatThrottledSocketFactory(
+    List<ChatTokenBucket> buckets,
+    LongConsumer progress
+  ) {
+    this.buckets = buckets;
+    this.progress = progress;
+  }
+
+  private class ThrottledOutputStream extends FilterOutputStream {
+
+    ThrottledOutputStream(OutputStream output) {
+      super(output);
+    }
+
+    private void acquire(int amount) throws IOException {
+      try {
+        for (var bucket : ChatThrottledSocketFactory.this.buckets) {
+          bucket.acquire(amount);
+        }
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Transfer was interrupted");
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      acquire(1);
+      this.out.write(b);
+      ChatThrottledSocketFactory.this.progress.accept(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        var length = Math.min(chunkSize, len);
+        acquire(length);
+        this.out.write(b, off, length);
+        ChatThrottledSocketFactory.this.progress.accept(length);
+        off += length;
+        len -= length;
+      }
+    }
+  }
+
+  @Override
+  public Socket createSocket() {
+    return new Socket() {
+      private OutputStream output;
+
+      @Override
+      public synchronized OutputStream getOutputStream() throws IOException {
+        if (this.output == null) {
+          this.output = new ThrottledOutputStream(super.getOutputStream());
+        }
+        return this.output;
+      }
+    };
+  }
+
+  @Override
+  public Socket createSocket(String host, int port) throws IOException {
+    var socket = createSocket();
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(
+    String host,
+    int port,
+    InetAddress localHost,
+    int localPort
+  ) throws IOException {
+    var socket = createSocket();
+    socket.bind(new InetSocketAddress(localHost, localPort));
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(InetAddress host, int port) throws IOException {
+    var socket = createSocket();
+    socket.connect(new InetSocketAddress(host, port));
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(
+    InetAddress address,
+    int port,
+    InetAddress localAddress,
+    int localPort
+  ) throws IOException {
+    var socket = createSocket();
+    socket.bind(new InetSocketAddress(localAddress, localPort));
+    socket.connect(new InetSocketAddress(address, port));
+    return socket;
+  }
+}
@@ -0,0 +1,51 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.util.concurrent.TimeUnit;
+
+class ChatTokenBucket {
+
+  private final long rate;
+  private final long capacity;
+
+  private long tokens;
+  private long refilledAt;
+
+  ChatTokenBucket(long rate) {
+    this.rate = rate;
+    this.capacity = rate;
+    this.tokens = rate;
+    this.refilledAt = System.nanoTime();
+  }
+
+  public boolean isUnlimited() {
+    return this.rate <= 0;
+  }
+
+  private void refill() {
+    var now = System.nanoTime();
+    var elapsed = now - this.refilledAt;
+    var earned = (elapsed * this.rate) / TimeUnit.SECONDS.toNanos(1);
+    if (earned > 0) {
+      this.tokens = Math.min(this.capacity, this.tokens + earned);
+      this.refilledAt = now;
+    }
+  }
+
+  public void acquire(long amount) throws InterruptedException {
+    if (isUnlimited()) return;
+
+    while (amount > 0) {
+      long wait;
+      synchronized (this) {
+        refill();
+        var taken = Math.min(amount, this.tokens);
+        this.tokens -= taken;
+        amount -= taken;
+        if (amount == 0) return;
+        var missing = Math.min(amount, this.capacity);
+        wait = (missing * TimeUnit.SECONDS.toNanos(1)) / this.rate;
+      }
+      TimeUnit.NANOSECONDS.sleep(Math.max(wait, 1));
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.net.SocketFactory;
+
+class ChatTransferScheduler implements AutoCloseable {
+
+  private static final int progressSteps = 4;
+
+  @FunctionalInterface
+  public interface Task {
+    void run(Transfer transfer) throws Exception;
+  }
+
+  public static class Transfer {
+
+    private final int id;
+    private final String filename;
+    private final String destination;
+    private final long size;
+    private final ChatTokenBucket bucket;
+    private final Consumer<String> reporter;
+
+    private volatile long sent;
+    private volatile boolean running;
+    private long nextReport;
+    private Future<?> future;
+
+    Transfer(
+      int id,
+      String filename,
+      String destination,
+      long size,
+      long rate,
+      Consumer<String> reporter
+    ) {
+      this.id = id;
+      this.filename = filename;
+      this.destination = destination;
+      this.size = size;
+      this.bucket = new ChatTokenBucket(rate);
+      this.reporter = reporter;
+      this.nextReport = step();
+    }
+
+    private long step() {
+      return Math.max(1, this.size / progressSteps);
+    }
+
+    private synchronized void advance(long bytes) {
+      this.sent = Math.min(this.size, this.sent + bytes);
+      if (this.sent < this.nextReport || this.sent >= this.size) return;
+
+      report(
+        String.format(
+          "File %s to %s at %d%%",
+          this.filename,
+          this.destination,
+          (this.sent * 100) / this.size
+        )
+      );
+      while (this.nextReport <= this.sent) this.nextReport += step();
+    }
+
+    public int getId() {
+      return this.id;
+    }
+
+    public String getFilename() {
+      return this.filename;
+    }
+
+    public String getDestination() {
+      return this.destination;
+    }
+
+    public void report(String text) {
+      this.reporter.accept(text);
+    }
+
+    @Override
+    public String toString() {
+      var percent = this.size == 0 ? 100 : (this.sent * 100) / this.size;
+      return String.format(
+        "[%d] %s to %s %s %d%% of %d bytes",
+        this.id,
+        this.filename,
+        this.destination,
+        this.running ? "sending" : "queued",
+        percent,
+        this.size
+      );
+    }
+  }
+
+  private final ExecutorService executor;
+  private final ChatTokenBucket globalBucket;
+  private final long transferRate;
+  private final AtomicInteger nextId;
+  private final Map<Integer, Transfer> transfers;
+
+  ChatTransferScheduler(int concurrency, long globalRate, long transferRate) {
+    this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+      var thread = new Thread(runnable, "chat-transfer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.globalBucket = new ChatTokenBucket(globalRate);
+    this.transferRate = transferRate;
+    this.nextId = new AtomicInteger(1);
+    this.transfers = new ConcurrentSkipListMap<Integer, Transfer>();
+  }
+
+  public int submit(
+    String filename,
+    String destination,
+    long size,
+    Consumer<String> reporter,
+    Task task
+  ) {
+    var transfer = new Transfer(
+      this.nextId.getAndIncrement(),
+      filename,
+      destination,
+      size,
+      this.transferRate,
+      reporter
+    );
+    this.transfers.put(transfer.id, transfer);
+
+    synchronized (transfer) {
+      transfer.future = this.executor.submit(() -> {
+        transfer.running = true;
+        try {
+          task.run(transfer);
+        } catch (final InterruptedException | InterruptedIOException e) {
+          transfer.report("Transfer of file " + filename + " was cancelled");
+        } catch (final Exception e) {
+          if (Thread.interrupted()) {
+            transfer.report("Transfer of file " + filename + " was cancelled");
+            return;
+          }
+          transfer.report(
+            "Could not send file " + filename + " to " + destination
+          );
+        } finally {
+          this.transfers.remove(transfer.id);
+        }
+      });
+    }
+    return transfer.id;
+  }
+
+  public SocketFactory getSocketFactory(Transfer transfer) {
+    return new ChatThrottledSocketFactory(
+      List.of(this.globalBucket, transfer.bucket),
+      transfer::advance
+    );
+  }
+
+  public ArrayList<String> list() {
+    var list = new ArrayList<String>();
+    for (var transfer : this.transfers.values()) {
+      list.add(transfer.toString());
+    }
+    return list;
+  }
+
+  public boolean cancel(int id) {
+    var transfer = this.transfers.remove(id);
+    if (transfer == null) return false;
+
+    synchronized (transfer) {
+      if (!transfer.running) {
+        transfer.report(
+          "Transfer of file " + transfer.filename + " was cancelled"
+        );
+      }
+      return transfer.future.cancel(true);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.executor.shutdownNow();
+  }
+}
@@ -1,16 +1,18 @@
 package br.ufs.dcomp.ChatRabbitMQ;
 
 import br.ufs.dcomp.Message;
-import com.rabbitmq.client.AMQP;
-import com.rabbitmq.client.DefaultConsumer;
-import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ConnectionFactory;
 import io.github.cdimascio.dotenv.Dotenv;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 import org.jline.reader.EndOfFileException;
 import org.jline.reader.LineReader;
@@ -20,110 +22,171 @@ import org.jline.terminal.TerminalBuilder;
 
 public class Main {
 
+  private static void warmUp(LineReader reader) throws IOException {
+    var payload = ChatMessageEncoder.encode(
+      ChatMessageEncoder.newBuilder("warm-up", "warm-up").setBody(
+        ChatMessageEncoder.wrap("warm-up".getBytes())
+      )
+    );
+    var properties = ChatHeaders.create(
+      ChatHeaders.KIND_TEXT,
+      "warm-up",
+      "warm-up",
+      "",
+      payload.length
+    );
+    reader.printAbove(
+      ChatDeliveryConsumer.render(
+        Message.parseFrom(payload),
+        ChatHeaders.get(properties, ChatHeaders.GROUP)
+      )
+    );
+  }
+
   public static void main(String[] argv)
     throws IOException, TimeoutException, URISyntaxException {
     var env = Dotenv.configure().ignoreIfMissing().load();
+    final var WARM_UP = Arrays.asList(argv).contains("--warm-up");
 
     final var RABBITMQ_HOST = env.get("RABBITMQ_HOST", "localhost");
     final var RABBITMQ_VHOST = env.get("RABBITMQ_VHOST", "/");
     final var RABBITMQ_PORT = env.get("RABBITMQ_PORT", "15672");
     final var RABBITMQ_USER = env.get("RABBITMQ_USER", "guest");
     final var RABBITMQ_PASSWORD = env.get("RABBITMQ_PASSWORD", "guest");
+    final var RABBITMQ_HOSTS = env.get("RABBITMQ_HOSTS", RABBITMQ_HOST);
+    final var RABBITMQ_API = env.get(
+      "RABBITMQ_API",
+      "http://" + RABBITMQ_HOST + ":" + RABBITMQ_PORT
+    );
     final var CHAT_DOWNLOAD_FOLDER = env.get(
       "CHAT_DOWNLOAD_FOLDER",
       Paths.get(System.getProperty("user.home"), "Downloads").toString()
     );
+    final var CHAT_DISK_WRITERS = Integer.parseInt(
+      env.get("CHAT_DISK_WRITERS", "2")
+    );
+    final var CHAT_FILE_PREFETCH = Integer.parseInt(
+      env.get("CHAT_FILE_PREFETCH", "4")
+    );
 
-    final var READER = LineReaderBuilder.builder()
-      .terminal(TerminalBuilder.terminal())
-      .option(LineReader.Option.DISABLE_EVENT_EXPANSION, true)
-      .build();
-
-    final var chat = new Chat(
-      RABBITMQ_HOST,
-      RABBITMQ_VHOST,
-      RABBITMQ_PORT,
-      RABBITMQ_USER,
-      RABBITMQ_PASSWORD,
-      (channel, username) ->
-        new DefaultConsumer(channel) {
-          public void handleDelivery(
-            String consumerTag,
-            Envelope envelope,
-            AMQP.BasicProperties properties,
-            byte[] body
-          ) {
-            try {
-              var message = Message.parseFrom(body);
-
-              if (message.getSender().equals(username)) return;
-
-              if (!message.hasSender()) {
-                READER.printAbove(
-                  String.format(
-                    "(%s) System reports: %s",
-                    message.getDatetime(),
-                    message
-                      .getBody()
-                      .toStringUtf8()
-                      .replaceFirst("user=", ChatSymbol.USER_SYMBOL.toString())
-                      .replaceFirst(
-                        "group=",
-                        ChatSymbol.GROUP_SYMBOL.toString()
-                      )
-                  )
-                );
-                return;
-              }
-
-              if (message.hasType() && message.hasFilename()) {
-                Files.write(
-                  Path.of(CHAT_DOWNLOAD_FOLDER, message.getFilename()),
-                  message.getBody().toByteArray()
-                );
-                READER.printAbove(
-                  String.format(
-                    "(%s) File %s received from %s%s",
-                    message.getDatetime(),
-                    message.getFilename(),
-                    ChatSymbol.USER_SYMBOL + message.getSender(),
-                    message.hasGroup()
-                      ? ChatSymbol.GROUP_SYMBOL + message.getGroup()
-                      : ""
-                  )
-                );
-                return;
-              }
-
-              READER.printAbove(
-                String.format(
-                  "(%s) %s%s says: %s",
-                  message.getDatetime(),
-                  ChatSymbol.USER_SYMBOL + message.getSender(),
-                  message.hasGroup()
-                    ? ChatSymbol.GROUP_SYMBOL + message.getGroup()
-                    : "",
-                  message.getBody().toStringUtf8()
-                )
-              );
-            } catch (final Exception e) {
-              e.printStackTrace();
-            }
-          }
-        }
+    final var CHAT_TRANSFER_CONCURRENCY = Integer.parseInt(
+      env.get("CHAT_TRANSFER_CONCURRENCY", "2")
+    );
+    final var CHAT_TRANSFER_RATE = Long.parseLong(
+      env.get("CHAT_TRANSFER_RATE", "0")
+    );
+    final var CHAT_TRANSFER_FILE_RATE = Long.parseLong(
+      env.get("CHAT_TRANSFER_FILE_RATE", "0")
+    );
+
+    final var CHAT_OUTGOING_BUFFER = Long.parseLong(
+      env.get("CHAT_OUTGOING_BUFFER", "1048576")
+    );
+
+    final var CHAT_COALESCE_WINDOW = Long.parseLong(
+      env.get("CHAT_COALESCE_WINDOW", "0")
     );
 
-    var commandHandler = new ChatCommandHandler(chat);
+    final var CHAT_QUEUE_LAYOUT = env.get("CHAT_QUEUE_LAYOUT", "split");
+
+    final var CHAT_TRACE_STARTUP = Boolean.parseBoolean(
+      env.get("CHAT_TRACE_STARTUP", "false")
+    );
+
+    final var CHAT_PASSIVE_LATENCY = Boolean.parseBoolean(
+      env.get("CHAT_PASSIVE_LATENCY", "false")
+    );
+
+    final var LATENCY = new ChatLatency(CHAT_PASSIVE_LATENCY);
+    final var HISTORY = new ChatHistory();
+    final var DISK_WRITER = new ChatDiskWriter(
+      CHAT_DOWNLOAD_FOLDER,
+      CHAT_DISK_WRITERS,
+      CHAT_FILE_PREFETCH
+    );
+
+    final var PENDING_READER = CompletableFuture.supplyAsync(() -> {
+      try {
+        var terminal = WARM_UP
+          ? TerminalBuilder.builder()
+            .dumb(true)
+            .streams(
+              InputStream.nullInputStream(),
+              OutputStream.nullOutputStream()
+            )
+            .build()
+          : TerminalBuilder.terminal();
+        return LineReaderBuilder.builder()
+          .terminal(terminal)
+          .option(LineReader.Option.DISABLE_EVENT_EXPANSION, true)
+          .build();
+      } catch (final IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+
+    Chat chat;
+    try {
+      chat = new Chat(
+        new ConnectionFactory(),
+        RABBITMQ_HOSTS,
+        RABBITMQ_API,
+        RABBITMQ_VHOST,
+        RABBITMQ_USER,
+        RABBITMQ_PASSWORD,
+        CHAT_FILE_PREFETCH,
+        new ChatTransferScheduler(
+          CHAT_TRANSFER_CONCURRENCY,
+          CHAT_TRANSFER_RATE,
+          CHAT_TRANSFER_FILE_RATE
+        ),
+        CHAT_OUTGOING_BUFFER,
+        LATENCY,
+        HISTORY,
+        CHAT_COALESCE_WINDOW,
+        CHAT_QUEUE_LAYOUT.equals("inbox"),
+        (channel, username, replier) ->
+          new ChatDeliveryConsumer(
+            channel,
+            username,
+            line -> PENDING_READER.join().printAbove(line),
+            replier,
+            DISK_WRITER,
+            LATENCY,
+            HISTORY
+          )
+      );
+    } catch (final IOException | TimeoutException e) {
+      if (!WARM_UP) throw e;
+      System.err.println("Broker unreachable, warming up without it");
+      chat = null;
+    }
+
+    if (WARM_UP) {
+      warmUp(PENDING_READER.join());
+      if (chat != null) chat.close();
+      PENDING_READER.join().getTerminal().close();
+      DISK_WRITER.close();
+      return;
+    }
+
+    final var READER = PENDING_READER.join();
+    var commandHandler = new ChatCommandHandler(chat, READER::printAbove);
+    var traced = !CHAT_TRACE_STARTUP;
 
     while (chat.isOpen()) {
       String response;
 
       try {
         String prompt = "";
+        if (chat.getConnectionState() != ChatConnectionState.OPEN) {
+          prompt =
+            "[" + chat.getConnectionState().toString().toLowerCase() + "] ";
+        }
         if (chat.getUserName().isBlank()) {
-          prompt = ChatSymbol.LOGIN_TEXT;
+          prompt += ChatSymbol.LOGIN_TEXT;
         } else {
-          prompt = chat.getUserName();
+          prompt += chat.getUserName();
           prompt += chat
             .getDestinatary()
             .replaceFirst("user=", ChatSymbol.USER_SYMBOL.toString())
@@ -158,8 +221,21 @@ public class Main {
       }
       var args = response.trim().substring(1).split(" ");
       commandHandler.apply(symbol, args);
+
+      if (!traced && symbol == ChatSymbol.TEXT_SYMBOL) {
+        traced = true;
+        var startedAt = ProcessHandle.current()
+          .info()
+          .startInstant()
+          .orElse(Instant.now());
+        System.err.printf(
+          "Time to first send: %d ms\n",
+          Duration.between(startedAt, Instant.now()).toMillis()
+        );
+      }
     }
 
+    DISK_WRITER.close();
     System.out.println("Exited");
   }
 }
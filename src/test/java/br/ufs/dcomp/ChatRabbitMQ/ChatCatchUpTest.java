@@ -0,0 +1,95 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.rabbitmq.client.Envelope;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatCatchUpTest {
+
+  private ChatDiskWriter diskWriter;
+  private ChatHistory history;
+  private CopyOnWriteArrayList<String> printed;
+  private AtomicInteger finished;
+  private ChatDeliveryConsumer consumer;
+
+  @Before
+  public void setUp() throws Exception {
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-catch-up").toString(),
+      1,
+      4
+    );
+    this.history = new ChatHistory(Duration.ofMillis(100));
+    this.printed = new CopyOnWriteArrayList<String>();
+    this.finished = new AtomicInteger();
+    this.consumer = new ChatDeliveryConsumer(
+      null,
+      "bob",
+      this.printed::add,
+      (routingKey, properties, body) -> {},
+      this.diskWriter,
+      new ChatLatency(false),
+      this.history
+    );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.diskWriter.close();
+  }
+
+  private void deliver(byte[] body) {
+    this.consumer.handleDelivery(
+      "catch-up",
+      new Envelope(1, false, "", "chat.text.bob"),
+      null,
+      body
+    );
+  }
+
+  private static byte[] text(String body) {
+    return ChatMessageEncoder.encodeText("alice", "", body, 1);
+  }
+
+  @Test
+  public void undecodableMessagesCountTowardsTheBacklog() {
+    this.history.beginCatchUp("catch-up", 2, this.finished::incrementAndGet);
+    this.consumer.handleConsumeOk("catch-up");
+
+    deliver(new byte[] { (byte) 0xff, (byte) 0xff });
+    deliver(text("queued"));
+
+    assertEquals(1, this.finished.get());
+    assertFalse(this.history.isCatchingUp("catch-up"));
+    assertTrue(this.printed.get(0).startsWith("Caught up on 2"));
+  }
+
+  @Test
+  public void idleBacklogFinishesCatchUp() throws Exception {
+    this.history.beginCatchUp("catch-up", 3, this.finished::incrementAndGet);
+    this.consumer.handleConsumeOk("catch-up");
+
+    deliver(text("queued"));
+    var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+    while (this.printed.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(1, this.finished.get());
+    assertFalse(this.history.isCatchingUp("catch-up"));
+    assertEquals(1, this.printed.size());
+
+    deliver(text("live"));
+    assertEquals(2, this.printed.size());
+    assertTrue(this.printed.get(1), this.printed.get(1).endsWith("live"));
+  }
+}
@@ -0,0 +1,40 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+
+import br.ufs.dcomp.Message;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ChatCoalescerTest {
+
+  @Test
+  public void closeDeliversBufferedMessagesBeforeReturning() {
+    var delivered = new AtomicInteger();
+    var coalescer = new ChatCoalescer(
+      TimeUnit.MINUTES.toMicros(1),
+      (exchange, routingKey, group, messages) -> {
+        try {
+          Thread.sleep(50);
+        } catch (final InterruptedException e) {
+          return;
+        }
+        delivered.addAndGet(messages.size());
+      }
+    );
+
+    for (var i = 0; i < 3; i++) {
+      coalescer.submit("", "chat.text.bob", "", Message.getDefaultInstance());
+      coalescer.submit(
+        "chat.group.lab",
+        "",
+        "lab",
+        Message.getDefaultInstance()
+      );
+    }
+    coalescer.close();
+
+    assertEquals(6, delivered.get());
+  }
+}
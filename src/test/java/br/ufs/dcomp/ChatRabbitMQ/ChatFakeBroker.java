@@ -0,0 +1,566 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.AlreadyClosedException;
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.BlockedCallback;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import com.rabbitmq.client.UnblockedCallback;
+import com.rabbitmq.client.impl.AMQImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ChatFakeBroker implements AutoCloseable {
+
+  private record Binding(String source, String destination, String key) {}
+
+  private record Subscription(
+    Channel channel,
+    String queue,
+    Consumer consumer
+  ) {}
+
+  private final Set<String> exchanges;
+  private final Set<String> queues;
+  private final Set<Binding> bindings;
+  private final Map<String, Subscription> consumers;
+  private final Set<Channel> channels;
+  private final AtomicInteger channelNumbers;
+  private final AtomicLong deliveryTags;
+  private final Map<String, AtomicLong> delivered;
+  private final List<String> connectedHosts;
+  private final Map<String, Set<String>> drainedBindings;
+  private final Set<String> failingConsumes;
+  private final Map<Connection, BlockedCallback> blockedCallbacks;
+  private final Map<Connection, UnblockedCallback> unblockedCallbacks;
+  private final Set<Connection> blocked;
+  private final AtomicInteger blockedPublishes;
+  private final AtomicInteger queueLookups;
+  private final HttpServer server;
+
+  private volatile String leader;
+
+  ChatFakeBroker() throws IOException {
+    this.exchanges = new HashSet<String>();
+    this.queues = new HashSet<String>();
+    this.bindings = new HashSet<Binding>();
+    this.consumers = new HashMap<String, Subscription>();
+    this.channels = new HashSet<Channel>();
+    this.channelNumbers = new AtomicInteger();
+    this.deliveryTags = new AtomicLong();
+    this.delivered = new ConcurrentHashMap<String, AtomicLong>();
+    this.connectedHosts = new ArrayList<String>();
+    this.drainedBindings = new HashMap<String, Set<String>>();
+    this.failingConsumes = new HashSet<String>();
+    this.blockedCallbacks = new HashMap<Connection, BlockedCallback>();
+    this.unblockedCallbacks = new HashMap<Connection, UnblockedCallback>();
+    this.blocked = new HashSet<Connection>();
+    this.blockedPublishes = new AtomicInteger();
+    this.queueLookups = new AtomicInteger();
+    this.leader = "rabbit@localhost";
+
+    this.server = HttpServer.create(
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+      0
+    );
+    this.server.createContext("/api/", this::handleApi);
+    this.server.start();
+  }
+
+  public String getApi() {
+    return "http://localhost:" + this.server.getAddress().getPort();
+  }
+
+  public ConnectionFactory getConnectionFactory() {
+    return new ConnectionFactory() {
+      @Override
+      public Connection newConnection(AddressResolver resolver)
+        throws IOException {
+        synchronized (ChatFakeBroker.this) {
+          ChatFakeBroker.this.connectedHosts.add(
+            resolver.getAddresses().get(0).getHost()
+          );
+        }
+        return openConnection();
+      }
+    };
+  }
+
+  public Chat newChat(String hosts, ChatDiskWriter diskWriter)
+    throws Exception {
+    return newChat(hosts, diskWriter, false);
+  }
+
+  public Chat newChat(
+    String hosts,
+    ChatDiskWriter diskWriter,
+    boolean inboxLayout
+  ) throws Exception {
+    var latency = new ChatLatency(false);
+    var history = new ChatHistory();
+    return new Chat(
+      getConnectionFactory(),
+      hosts,
+      getApi(),
+      "/",
+      "guest",
+      "guest",
+      4,
+      new ChatTransferScheduler(1, 0, 0),
+      1024 * 1024,
+      latency,
+      history,
+      0,
+      inboxLayout,
+      (channel, userName, replier) ->
+        new ChatDeliveryConsumer(
+          channel,
+          userName,
+          line -> {},
+          replier,
+          diskWriter,
+          latency,
+          history
+        )
+    );
+  }
+
+  public void setLeader(String leader) {
+    this.leader = leader;
+  }
+
+  public synchronized List<String> getConnectedHosts() {
+    return List.copyOf(this.connectedHosts);
+  }
+
+  public int getQueueLookups() {
+    return this.queueLookups.get();
+  }
+
+  public synchronized int getOpenChannels() {
+    return this.channels.size();
+  }
+
+  public synchronized int getConsumers() {
+    return this.consumers.size();
+  }
+
+  public synchronized int getExchanges() {
+    return this.exchanges.size();
+  }
+
+  public long getDelivered(String queue) {
+    var count = this.delivered.get(queue);
+    return count == null ? 0 : count.get();
+  }
+
+  public void block() throws IOException {
+    var callbacks = new ArrayList<BlockedCallback>();
+    synchronized (this) {
+      this.blocked.addAll(this.blockedCallbacks.keySet());
+      callbacks.addAll(this.blockedCallbacks.values());
+    }
+    for (var callback : callbacks) callback.handle("low on memory");
+  }
+
+  public void unblock() throws IOException {
+    var callbacks = new ArrayList<UnblockedCallback>();
+    synchronized (this) {
+      for (var connection : this.blocked) {
+        callbacks.add(this.unblockedCallbacks.get(connection));
+      }
+      this.blocked.clear();
+    }
+    for (var callback : callbacks) callback.handle();
+  }
+
+  public int getBlockedPublishes() {
+    return this.blockedPublishes.get();
+  }
+
+  public synchronized void failConsume(String queue) {
+    this.failingConsumes.add(queue);
+  }
+
+  public synchronized boolean hasQueue(String queue) {
+    return this.queues.contains(queue);
+  }
+
+  public synchronized Set<String> getDrainedBindings(String queue) {
+    return this.drainedBindings.get(queue);
+  }
+
+  public synchronized Set<String> getBindings(String queue) {
+    var bindings = new HashSet<String>();
+    for (var binding : this.bindings) {
+      if (binding.destination().equals(queue)) {
+        bindings.add(binding.source() + " " + binding.key());
+      }
+    }
+    return bindings;
+  }
+
+  public synchronized void declareQueue(String queue) {
+    this.queues.add(queue);
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+  }
+
+  private static Object getDefault(Class<?> type) {
+    if (type == boolean.class) return false;
+    if (type == int.class) return 0;
+    if (type == long.class) return 0L;
+    return null;
+  }
+
+  private Connection openConnection() {
+    var listeners = new ArrayList<ShutdownListener>();
+    var open = new boolean[] { true };
+
+    return (Connection) Proxy.newProxyInstance(
+      getClass().getClassLoader(),
+      new Class<?>[] { Connection.class, Recoverable.class },
+      (proxy, method, args) ->
+        switch (method.getName()) {
+          case "createChannel" -> openChannel((Connection) proxy);
+          case "addShutdownListener" -> {
+            listeners.add((ShutdownListener) args[0]);
+            yield null;
+          }
+          case "addBlockedListener" -> {
+            synchronized (this) {
+              this.blockedCallbacks.put(
+                (Connection) proxy,
+                (BlockedCallback) args[0]
+              );
+              this.unblockedCallbacks.put(
+                (Connection) proxy,
+                (UnblockedCallback) args[1]
+              );
+            }
+            yield null;
+          }
+          case "isOpen" -> open[0];
+          case "close", "abort" -> {
+            open[0] = false;
+            var cause = new ShutdownSignalException(true, true, null, proxy);
+            for (var listener : listeners) listener.shutdownCompleted(cause);
+            yield null;
+          }
+          case "getAddress" -> InetAddress.getLoopbackAddress();
+          case "getPort" -> ConnectionFactory.DEFAULT_AMQP_PORT;
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          case "toString" -> "fake connection";
+          default -> getDefault(method.getReturnType());
+        }
+    );
+  }
+
+  private Channel openChannel(Connection connection) {
+    var number = this.channelNumbers.incrementAndGet();
+    var listeners = new ArrayList<ShutdownListener>();
+    var open = new boolean[] { true };
+    var holder = new Channel[1];
+
+    Runnable shutdown = () -> {
+      synchronized (this) {
+        if (!open[0]) return;
+        open[0] = false;
+        this.channels.remove(holder[0]);
+        this.consumers.values().removeIf(s -> s.channel() == holder[0]);
+      }
+      var cause = new ShutdownSignalException(false, false, null, holder[0]);
+      for (var listener : listeners) listener.shutdownCompleted(cause);
+    };
+
+    holder[0] = (Channel) Proxy.newProxyInstance(
+      getClass().getClassLoader(),
+      new Class<?>[] { Channel.class },
+      (proxy, method, args) -> {
+        var name = method.getName();
+        switch (name) {
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "equals":
+            return proxy == args[0];
+          case "toString":
+            return "fake channel " + number;
+          case "getChannelNumber":
+            return number;
+          case "getConnection":
+            return connection;
+          case "isOpen":
+            return open[0];
+          case "addShutdownListener":
+            listeners.add((ShutdownListener) args[0]);
+            return null;
+          case "close":
+          case "abort":
+            shutdown.run();
+            return null;
+          default:
+            break;
+        }
+
+        if (!open[0]) {
+          throw new AlreadyClosedException(
+            new ShutdownSignalException(false, true, null, proxy)
+          );
+        }
+        try {
+          return invoke((Channel) proxy, method, args);
+        } catch (final IOException e) {
+          shutdown.run();
+          throw e;
+        }
+      }
+    );
+
+    synchronized (this) {
+      this.channels.add(holder[0]);
+    }
+    return holder[0];
+  }
+
+  private Object invoke(Channel channel, Method method, Object[] args)
+    throws IOException {
+    var name = method.getName();
+    synchronized (this) {
+      switch (name) {
+        case "exchangeDeclarePassive":
+          if (!this.exchanges.contains(args[0])) {
+            throw new IOException("NOT_FOUND - no exchange " + args[0]);
+          }
+          return null;
+        case "queueDeclarePassive":
+          if (!this.queues.contains(args[0])) {
+            throw new IOException("NOT_FOUND - no queue " + args[0]);
+          }
+          return new AMQImpl.Queue.DeclareOk((String) args[0], 0, 0);
+        case "exchangeDeclare":
+          this.exchanges.add((String) args[0]);
+          return null;
+        case "exchangeDelete":
+          this.exchanges.remove(args[0]);
+          this.bindings.removeIf(b -> b.source().equals(args[0]));
+          return null;
+        case "queueDeclare":
+        case "queueDeclareNoWait": {
+          var queue = args == null
+            ? "amq.gen-" + UUID.randomUUID()
+            : (String) args[0];
+          this.queues.add(queue);
+          return new AMQImpl.Queue.DeclareOk(queue, 0, 0);
+        }
+        case "queueDelete":
+          this.queues.remove(args[0]);
+          this.bindings.removeIf(b -> b.destination().equals(args[0]));
+          return null;
+        case "queueBind":
+          if (!this.exchanges.contains(args[1])) {
+            throw new IOException("NOT_FOUND - no exchange " + args[1]);
+          }
+          this.bindings.add(
+            new Binding((String) args[1], (String) args[0], (String) args[2])
+          );
+          return null;
+        case "queueUnbind":
+          this.bindings.remove(
+            new Binding((String) args[1], (String) args[0], (String) args[2])
+          );
+          return null;
+        case "basicConsume": {
+          if (this.failingConsumes.contains(args[0])) {
+            throw new IOException("NOT_FOUND - no queue " + args[0]);
+          }
+          var tag = (String) args[2];
+          var consumer = (Consumer) args[args.length - 1];
+          this.consumers.put(
+            tag,
+            new Subscription(channel, (String) args[0], consumer)
+          );
+          consumer.handleConsumeOk(tag);
+          return tag;
+        }
+        case "basicCancel": {
+          var subscription = this.consumers.remove(args[0]);
+          if (subscription != null) {
+            subscription.consumer().handleCancelOk((String) args[0]);
+          }
+          return null;
+        }
+        case "basicGet":
+          this.drainedBindings.putIfAbsent(
+            (String) args[0],
+            getBindings((String) args[0])
+          );
+          return null;
+        case "messageCount":
+          return 0L;
+        default:
+          break;
+      }
+    }
+
+    if (name.equals("basicPublish")) {
+      synchronized (this) {
+        if (this.blocked.contains(channel.getConnection())) {
+          this.blockedPublishes.incrementAndGet();
+        }
+      }
+      publish(args);
+    }
+    return getDefault(method.getReturnType());
+  }
+
+  private void publish(Object[] args) throws IOException {
+    var exchange = (String) args[0];
+    var routingKey = (String) args[1];
+    var properties = (AMQP.BasicProperties) args[args.length - 2];
+    var body = (byte[]) args[args.length - 1];
+
+    var targets = new ArrayList<Subscription>();
+    synchronized (this) {
+      var destinations = new HashSet<String>();
+      if (exchange.isEmpty()) {
+        destinations.add(routingKey);
+      } else {
+        for (var binding : this.bindings) {
+          if (
+            binding.source().equals(exchange) &&
+            (binding.key().equals(routingKey) || binding.key().isEmpty())
+          ) {
+            destinations.add(binding.destination());
+          }
+        }
+      }
+      for (var subscription : this.consumers.values()) {
+        if (destinations.contains(subscription.queue())) {
+          targets.add(subscription);
+        }
+      }
+    }
+
+    for (var target : targets) {
+      this.delivered
+        .computeIfAbsent(target.queue(), q -> new AtomicLong())
+        .incrementAndGet();
+      target
+        .consumer()
+        .handleDelivery(
+          "",
+          new Envelope(
+            this.deliveryTags.incrementAndGet(),
+            false,
+            exchange,
+            routingKey
+          ),
+          properties,
+          body
+        );
+    }
+  }
+
+  private void respond(HttpExchange exchange, int status, JsonElement body)
+    throws IOException {
+    var bytes = body == null
+      ? new byte[0]
+      : body.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    try (var output = exchange.getResponseBody()) {
+      output.write(bytes);
+    }
+  }
+
+  private JsonObject toJson(Binding binding) {
+    var object = new JsonObject();
+    object.addProperty("source", binding.source());
+    object.addProperty("destination", binding.destination());
+    object.addProperty("routing_key", binding.key());
+    return object;
+  }
+
+  private void handleApi(HttpExchange exchange) throws IOException {
+    var path = Arrays.stream(exchange.getRequestURI().getRawPath().split("/"))
+      .filter(s -> !s.isEmpty())
+      .map(s -> URLDecoder.decode(s, StandardCharsets.UTF_8))
+      .toList();
+
+    JsonElement body = null;
+    synchronized (this) {
+      body = route(path);
+    }
+    respond(exchange, body == null ? 404 : 200, body);
+  }
+
+  private JsonElement route(List<String> path) {
+    var array = new JsonArray();
+    if (path.size() == 3 && path.get(1).equals("exchanges")) {
+      for (var name : this.exchanges) {
+        var object = new JsonObject();
+        object.addProperty("name", name);
+        array.add(object);
+      }
+      return array;
+    }
+    if (path.size() == 3 && path.get(1).equals("bindings")) {
+      for (var binding : this.bindings) array.add(toJson(binding));
+      return array;
+    }
+    if (path.size() == 6 && path.get(1).equals("exchanges")) {
+      if (!this.exchanges.contains(path.get(3))) return null;
+      for (var binding : this.bindings) {
+        if (binding.source().equals(path.get(3))) array.add(toJson(binding));
+      }
+      return array;
+    }
+    if (path.size() >= 4 && path.get(1).equals("queues")) {
+      var queue = path.get(3);
+      if (path.size() == 4) this.queueLookups.incrementAndGet();
+      if (!this.queues.contains(queue)) return null;
+      if (path.size() == 4) {
+        var object = new JsonObject();
+        object.addProperty("name", queue);
+        object.addProperty("leader", this.leader);
+        return object;
+      }
+      for (var binding : this.bindings) {
+        if (binding.destination().equals(queue)) array.add(toJson(binding));
+      }
+      return array;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,59 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Files;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatInboxMigrationTest {
+
+  private ChatFakeBroker broker;
+  private ChatDiskWriter diskWriter;
+
+  @Before
+  public void setUp() throws Exception {
+    this.broker = new ChatFakeBroker();
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-migration").toString(),
+      1,
+      4
+    );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.diskWriter.close();
+    this.broker.close();
+  }
+
+  @Test
+  public void migrationMovesGroupBindingsToTheInbox() throws Exception {
+    var split = this.broker.newChat("localhost", this.diskWriter);
+    split.logIn("bob");
+    split.createGroup("lab");
+    split.logOut();
+    split.close();
+
+    assertEquals(
+      Set.of("chat.group.lab chat.text"),
+      this.broker.getBindings("chat.text.bob")
+    );
+
+    var inbox = this.broker.newChat("localhost", this.diskWriter, true);
+    inbox.logIn("bob");
+    inbox.close();
+
+    assertEquals(
+      Set.of("chat.group.lab chat.inbox"),
+      this.broker.getBindings("chat.inbox.bob")
+    );
+    assertEquals(Set.of(), this.broker.getDrainedBindings("chat.text.bob"));
+    assertEquals(Set.of(), this.broker.getDrainedBindings("chat.file.bob"));
+    assertFalse(this.broker.hasQueue("chat.text.bob"));
+    assertFalse(this.broker.hasQueue("chat.file.bob"));
+  }
+}
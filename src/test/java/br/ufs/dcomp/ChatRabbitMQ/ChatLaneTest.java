@@ -0,0 +1,53 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatLaneTest {
+
+  private ChatFakeBroker broker;
+  private ChatDiskWriter diskWriter;
+  private Chat chat;
+
+  @Before
+  public void setUp() throws Exception {
+    this.broker = new ChatFakeBroker();
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-lanes").toString(),
+      1,
+      4
+    );
+    this.chat = this.broker.newChat("localhost", this.diskWriter);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.chat.close();
+    this.diskWriter.close();
+    this.broker.close();
+  }
+
+  @Test
+  public void failedLogInClosesTheFileLane() throws Exception {
+    var channels = this.broker.getOpenChannels();
+    var consumers = this.broker.getConsumers();
+    this.broker.failConsume("chat.text.bob");
+
+    for (var i = 0; i < 3; i++) {
+      try {
+        this.chat.logIn("bob");
+        fail("The text lane must fail");
+      } catch (final ChatException e) {
+        assertEquals("Could not log in", e.getMessage());
+      }
+
+      assertEquals(channels, this.broker.getOpenChannels());
+      assertEquals(consumers, this.broker.getConsumers());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import com.google.protobuf.ByteString;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageEncoderBenchmark {
+
+  @Param({ "", "friends" })
+  public String group;
+
+  private final String text = "see you at the lab in five minutes";
+
+  @Benchmark
+  public void builder(Blackhole blackhole) {
+    var payload = ChatMessageEncoder.encode(
+      ChatMessageEncoder.newBuilder("alice", this.group)
+        .setBody(ByteString.copyFromUtf8(this.text))
+        .setSentAt(System.nanoTime())
+    );
+    blackhole.consume(payload);
+    blackhole.consume(
+      ChatHeaders.create(
+        ChatHeaders.KIND_TEXT,
+        "alice",
+        this.group,
+        "",
+        payload.length
+      )
+    );
+  }
+
+  @Benchmark
+  public void encodeText(Blackhole blackhole) {
+    blackhole.consume(
+      ChatMessageEncoder.encodeText(
+        "alice",
+        this.group,
+        this.text,
+        System.nanoTime()
+      )
+    );
+    blackhole.consume(ChatHeaders.text("alice", this.group));
+  }
+}
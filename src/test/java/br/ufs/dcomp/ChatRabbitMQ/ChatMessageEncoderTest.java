@@ -0,0 +1,76 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import br.ufs.dcomp.Message;
+import com.google.protobuf.ByteString;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class ChatMessageEncoderTest {
+
+  private static final int iterations = 200_000;
+  private static final String text = "hello from the encoder test";
+
+  @Test
+  public void encodeTextMatchesTheBuilder() throws Exception {
+    for (var group : new String[] { "", "friends" }) {
+      var expected = Message.parseFrom(
+        ChatMessageEncoder.encode(
+          ChatMessageEncoder.newBuilder("alice", group)
+            .setBody(ByteString.copyFromUtf8(text))
+            .setSentAt(42)
+        )
+      );
+      var actual = Message.parseFrom(
+        ChatMessageEncoder.encodeText("alice", group, text, 42)
+      );
+      assertEquals(
+        expected.toBuilder().clearDatetime().build(),
+        actual.toBuilder().clearDatetime().build()
+      );
+      assertTrue(actual.hasSentAt());
+    }
+  }
+
+  @Test
+  public void textHeadersAreReused() {
+    var first = ChatHeaders.text("alice", "friends");
+    assertSame(first, ChatHeaders.text("alice", "friends"));
+    assertEquals(
+      "friends",
+      ChatHeaders.get(ChatHeaders.text("alice", "friends"), ChatHeaders.GROUP)
+    );
+  }
+
+  @Test
+  public void encodeTextOnlyAllocatesThePayload() {
+    var threads = (com.sun.management.ThreadMXBean)
+      ManagementFactory.getThreadMXBean();
+    var thread = Thread.currentThread().threadId();
+    var payloadSize = ChatMessageEncoder.encodeText("alice", "", text, 1)
+      .length;
+
+    long sink = 0;
+    for (var i = 0; i < iterations; i++) {
+      sink += ChatMessageEncoder.encodeText("alice", "", text, i).length;
+      sink += ChatHeaders.text("alice", "").hashCode();
+    }
+
+    var before = threads.getThreadAllocatedBytes(thread);
+    for (var i = 0; i < iterations; i++) {
+      sink += ChatMessageEncoder.encodeText("alice", "", text, i).length;
+      sink += ChatHeaders.text("alice", "").hashCode();
+    }
+    var perMessage =
+      (threads.getThreadAllocatedBytes(thread) - before) / iterations;
+
+    assertTrue(sink != 0);
+    assertTrue(
+      "allocated " + perMessage + " bytes per message",
+      perMessage <= payloadSize + 128
+    );
+  }
+}
@@ -0,0 +1,69 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatNodeResolverTest {
+
+  private ChatFakeBroker broker;
+  private ChatDiskWriter diskWriter;
+  private Chat chat;
+
+  @Before
+  public void setUp() throws Exception {
+    this.broker = new ChatFakeBroker();
+    this.broker.declareQueue("chat.text.bob");
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-resolver").toString(),
+      1,
+      4
+    );
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (this.chat != null) this.chat.close();
+    this.diskWriter.close();
+    this.broker.close();
+  }
+
+  @Test
+  public void singleHostSkipsTheLeaderLookup() throws Exception {
+    this.chat = this.broker.newChat("127.0.0.1", this.diskWriter);
+    this.chat.logIn("bob");
+
+    assertEquals(0, this.broker.getQueueLookups());
+    assertEquals(List.of("127.0.0.1"), this.broker.getConnectedHosts());
+    var status = this.chat.getStatus();
+    assertTrue(status, status.contains("node: 127.0.0.1:5672"));
+  }
+
+  @Test
+  public void clusterReconnectsToTheQueueLeader() throws Exception {
+    this.broker.setLeader("rabbit@127.0.0.2");
+    this.chat = this.broker.newChat("127.0.0.1,127.0.0.2", this.diskWriter);
+    this.chat.logIn("bob");
+
+    assertEquals(1, this.broker.getQueueLookups());
+    assertEquals(
+      List.of("127.0.0.1", "127.0.0.2"),
+      this.broker.getConnectedHosts()
+    );
+  }
+
+  @Test
+  public void clusterStaysOnTheLeader() throws Exception {
+    this.broker.setLeader("rabbit@127.0.0.1");
+    this.chat = this.broker.newChat("127.0.0.1,127.0.0.2", this.diskWriter);
+    this.chat.logIn("bob");
+
+    assertEquals(1, this.broker.getQueueLookups());
+    assertEquals(List.of("127.0.0.1"), this.broker.getConnectedHosts());
+  }
+}
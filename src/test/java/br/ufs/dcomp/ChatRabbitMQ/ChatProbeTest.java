@@ -0,0 +1,59 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatProbeTest {
+
+  private ChatFakeBroker broker;
+  private ChatDiskWriter diskWriter;
+  private Chat alice;
+  private Chat bob;
+
+  @Before
+  public void setUp() throws Exception {
+    this.broker = new ChatFakeBroker();
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-probe").toString(),
+      1,
+      4
+    );
+    this.bob = this.broker.newChat("localhost", this.diskWriter);
+    this.bob.logIn("bob");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.alice.close();
+    this.bob.close();
+    this.diskWriter.close();
+    this.broker.close();
+  }
+
+  @Test
+  public void blockedReplyWaitsInThePublisher() throws Exception {
+    this.broker.block();
+    this.alice = this.broker.newChat("localhost", this.diskWriter);
+    this.alice.logIn("alice");
+    var replies = this.broker.getDelivered("chat.text.alice");
+
+    this.alice.ping(ChatSymbol.USER_SYMBOL + "bob");
+
+    assertEquals(0, this.broker.getBlockedPublishes());
+    assertEquals(replies, this.broker.getDelivered("chat.text.alice"));
+
+    this.broker.unblock();
+    var deadline = System.nanoTime() + 5_000_000_000L;
+    while (
+      this.broker.getDelivered("chat.text.alice") == replies &&
+      System.nanoTime() < deadline
+    ) {
+      Thread.sleep(10);
+    }
+    assertEquals(replies + 1, this.broker.getDelivered("chat.text.alice"));
+  }
+}
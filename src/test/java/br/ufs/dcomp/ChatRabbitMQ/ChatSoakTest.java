@@ -0,0 +1,129 @@
+package br.ufs.dcomp.ChatRabbitMQ;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChatSoakTest {
+
+  private static final int warmUpCycles = 100;
+  private static final long heapSlack = 8 * 1024 * 1024;
+
+  private ChatFakeBroker broker;
+  private ChatDiskWriter diskWriter;
+  private Chat alice;
+  private Chat bob;
+
+  @Before
+  public void setUp() throws Exception {
+    this.broker = new ChatFakeBroker();
+    this.diskWriter = new ChatDiskWriter(
+      Files.createTempDirectory("chat-soak").toString(),
+      1,
+      4
+    );
+    this.alice = this.broker.newChat("localhost", this.diskWriter);
+    this.bob = this.broker.newChat("localhost", this.diskWriter);
+    this.bob.logIn("bob");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.alice.close();
+    this.bob.close();
+    this.diskWriter.close();
+    this.broker.close();
+  }
+
+  private void cycle(int i) throws Exception {
+    var group = "soak" + i;
+
+    this.alice.logIn("alice");
+    this.alice.createGroup(group);
+    this.alice.addUserToGroup("bob", group);
+    this.alice.sendText("hello group " + i);
+    this.alice.removeUserFromGroup("bob", group);
+
+    try {
+      this.alice.setDestinatary("nobody", false);
+      fail("A missing user must be rejected");
+    } catch (final ChatException e) {
+      assertEquals("Given user does not exist", e.getMessage());
+    }
+    try {
+      this.alice.addUserToGroup("bob", "missing" + i);
+      fail("A missing group must be rejected");
+    } catch (final ChatException e) {
+      assertEquals("Given group does not exist", e.getMessage());
+    }
+
+    this.alice.setDestinatary("bob", false);
+    this.alice.sendText("hello bob " + i);
+    this.alice.deleteGroup(group);
+    this.alice.logOut();
+  }
+
+  private static long getUsedHeap() throws InterruptedException {
+    var memory = ManagementFactory.getMemoryMXBean();
+    for (var i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+
+  private static Duration getDuration() {
+    return Duration.parse(System.getProperty("soak.duration", "PT5S"));
+  }
+
+  @Test
+  public void churnKeepsChannelsConsumersAndHeapFlat() throws Exception {
+    for (var i = 0; i < warmUpCycles; i++) cycle(i);
+
+    var channels = this.broker.getOpenChannels();
+    var consumers = this.broker.getConsumers();
+    var exchanges = this.broker.getExchanges();
+    var delivered = this.broker.getDelivered("chat.text.bob");
+    var heap = getUsedHeap();
+
+    var deadline = System.nanoTime() + getDuration().toNanos();
+    var cycles = 0;
+    var checkpoint = System.nanoTime();
+    while (System.nanoTime() < deadline) {
+      cycle(warmUpCycles + cycles++);
+
+      assertEquals(channels, this.broker.getOpenChannels());
+      assertEquals(consumers, this.broker.getConsumers());
+      assertEquals(exchanges, this.broker.getExchanges());
+
+      if (System.nanoTime() - checkpoint > Duration.ofMinutes(1).toNanos()) {
+        checkpoint = System.nanoTime();
+        var used = getUsedHeap();
+        assertTrue(
+          "heap grew from " + heap + " to " + used + " bytes",
+          used - heap < heapSlack
+        );
+      }
+    }
+
+    var used = getUsedHeap();
+    assertTrue(
+      "heap grew from " + heap + " to " + used + " bytes",
+      used - heap < heapSlack
+    );
+    assertEquals(
+      2L * cycles,
+      this.broker.getDelivered("chat.text.bob") - delivered
+    );
+    var report = this.alice.getChannelReport();
+    assertTrue(report, report.contains("channels: 2 open"));
+    assertTrue(report, report.contains("consumers: 1 active"));
+  }
+}